@@ -17,9 +17,23 @@ package org.onosproject.driver.pipeline;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.onlab.osgi.ServiceDirectory;
 import org.onlab.packet.EthType.EtherType;
@@ -32,14 +46,21 @@ import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
 import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
 import org.onosproject.net.flow.FlowRuleOperations;
 import org.onosproject.net.flow.FlowRuleOperationsContext;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.criteria.Criteria;
+import org.onosproject.net.flow.criteria.Criterion;
 import org.onosproject.net.flow.criteria.Criterion.Type;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.onosproject.net.flow.instructions.Instruction;
 import org.onosproject.net.flow.instructions.Instructions;
 import org.onosproject.net.flowobjective.FilteringObjective;
 import org.onosproject.net.flowobjective.FlowObjectiveStore;
@@ -69,6 +90,46 @@ public class OVSPipeline extends DefaultSingleTablePipeline
     private static final int MAC_TABLE = 1;
     private static final int TABLE_MISS_PRIORITY = 0;
 
+    // Megaflow layout: every stage is a block of tables, one table per match field shape.
+    private static final String LAYOUT_PROPERTY = "ovsPipelineLayout";
+    private static final String MEGAFLOW_LAYOUT = "megaflow";
+    private static final int MEGAFLOW_BLOCK_SIZE = 16;
+    private boolean megaflowLayout;
+    // Tables of every stage block in chain order, and the table of every (shape, priority) placed in a block.
+    private final Map<Integer, List<PriorityBand>> stageBands = new HashMap<>();
+    private final Map<Integer, Map<String, Integer>> shapePlacements = new HashMap<>();
+
+    // Ingress filtering: FilteringObjectives admit traffic in table 0, in front of the other
+    // stages which are shifted by one table. Anything not admitted is dropped at the first lookup.
+    private static final String INGRESS_FILTER_PROPERTY = "ovsPipelineIngressFilter";
+    private static final int INGRESS_TABLE = 0;
+    private static final Set<Criterion.Type> INGRESS_CRITERIA =
+            EnumSet.of(Type.IN_PORT, Type.VLAN_VID, Type.ETH_SRC, Type.ETH_DST);
+    private boolean ingressFilter;
+
+    // Rules installed by forward(), with reference counts per objective owner.
+    private final Map<RuleKey, RuleReference> installedRules = new HashMap<>();
+    private final Map<FlowId, RuleKey> installedIds = new HashMap<>();
+    private final FlowRuleListener flowRuleListener = new InternalFlowRuleListener();
+    // The pipeliner currently serving each device. A device re-initialized by the driver subsystem gets a new
+    // instance, the previous one stops listening so that it never reinstalls a rule of its own stale index.
+    private static final ConcurrentMap<DeviceId, OVSPipeline> ACTIVE_PIPELINES = new ConcurrentHashMap<>();
+
+    // Table occupancy: rules per table, of any application, seeded from the device and kept by flow rule events.
+    // Limits of 0 disable the admission control.
+    private static final String SOFT_LIMIT_PROPERTY = "ovsPipelineTableSoftLimit";
+    private static final String HARD_LIMIT_PROPERTY = "ovsPipelineTableHardLimit";
+    private int tableSoftLimit;
+    private int tableHardLimit;
+    private final Map<Integer, Set<FlowId>> occupiedRules = new HashMap<>();
+    private final Map<Integer, Set<FlowId>> pendingRules = new HashMap<>();
+    private final Deque<QueuedObjective> admissionQueue = new ArrayDeque<>();
+    private boolean admissionBusy;
+    // Queued objectives fail when the queue is full or once they waited too long, so that their sender
+    // gets a callback before it gives up on them, instead of resending them while they are still queued.
+    private static final int ADMISSION_QUEUE_CAPACITY = 1024;
+    private static final long ADMISSION_QUEUE_EXPIRY = 5000;
+
     @Override
     public void init(DeviceId deviceId, PipelinerContext context) {
         super.init(deviceId, context);
@@ -80,12 +141,117 @@ public class OVSPipeline extends DefaultSingleTablePipeline
         flowObjectiveStore = context.store();
         appId = coreService
                 .registerApplication("org.onosproject.driver.OVSPipeline");
+        megaflowLayout = MEGAFLOW_LAYOUT.equals(handler().driver().properties().get(LAYOUT_PROPERTY));
+        ingressFilter = Boolean.parseBoolean(handler().driver().properties().get(INGRESS_FILTER_PROPERTY));
+        tableSoftLimit = intProperty(SOFT_LIMIT_PROPERTY);
+        tableHardLimit = intProperty(HARD_LIMIT_PROPERTY);
+        OVSPipeline previous = ACTIVE_PIPELINES.put(deviceId, this);
+        if (previous != null && previous != this) {
+            previous.flowRuleService.removeListener(previous.flowRuleListener);
+        }
+        flowRuleService.addListener(flowRuleListener);
+        Iterable<FlowEntry> entries = flowRuleService.getFlowEntries(deviceId);
+        if (megaflowLayout) {
+            rebuildPlacements(entries);
+        }
+        seedOccupancy(entries);
         initializePipeline();
     }
 
+    private int intProperty(String name) {
+        String value = handler().driver().properties().get(name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid {} value {}, disabled", name, value);
+            return 0;
+        }
+    }
+
     @Override
     public void filter(FilteringObjective filteringObjective) {
-        super.filter(filteringObjective);
+        if (!ingressFilter) {
+            super.filter(filteringObjective);
+            return;
+        }
+
+        TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
+        List<Criterion> criteria = new ArrayList<>(filteringObjective.conditions());
+        if (filteringObjective.key() != null && !filteringObjective.key().equals(Criteria.dummy())) {
+            criteria.add(filteringObjective.key());
+        }
+        for (Criterion criterion : criteria) {
+            if (!INGRESS_CRITERIA.contains(criterion.type())) {
+                fail(filteringObjective, ObjectiveError.UNSUPPORTED);
+                log.warn("Ingress table admits by port, VLAN and MAC only, not {}", criterion.type());
+                return;
+            }
+            selector.add(criterion);
+        }
+
+        TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
+        if (filteringObjective.type() == FilteringObjective.Type.PERMIT) {
+            treatment.transition(physicalTable(L3FWD_TABLE));
+        } else {
+            treatment.drop();
+        }
+
+        FlowRule.Builder ruleBuilder = DefaultFlowRule.builder()
+                .fromApp(filteringObjective.appId()).withPriority(filteringObjective.priority())
+                .forDevice(deviceId).forTable(INGRESS_TABLE)
+                .withSelector(selector.build()).withTreatment(treatment.build());
+        if (filteringObjective.permanent()) {
+            ruleBuilder.makePermanent();
+        } else {
+            ruleBuilder.makeTemporary(filteringObjective.timeout());
+        }
+        FlowRule rule = ruleBuilder.build();
+
+        List<FlowRule> rules = Collections.singletonList(rule);
+        FlowRuleOperations.Builder flowOpsBuilder = FlowRuleOperations.builder();
+        switch (filteringObjective.op()) {
+        case ADD:
+            Integer full;
+            synchronized (this) {
+                full = tableOverLimit(rules, tableHardLimit);
+                if (full == null) {
+                    reserve(rules);
+                }
+            }
+            if (full != null) {
+                log.warn("Table {} of {} is at its hard limit of {} rules, filter {} rejected",
+                         full, deviceId, tableHardLimit, filteringObjective.id());
+                fail(filteringObjective, ObjectiveError.UNSUPPORTED);
+                return;
+            }
+            flowOpsBuilder.add(rule);
+            break;
+        case REMOVE:
+            flowOpsBuilder.remove(rule);
+            break;
+        default:
+            fail(filteringObjective, ObjectiveError.UNKNOWN);
+            log.warn("Unknown filtering operation {}", filteringObjective.op());
+            return;
+        }
+
+        flowRuleService.apply(flowOpsBuilder
+                .build(new FlowRuleOperationsContext() {
+                    @Override
+                    public void onSuccess(FlowRuleOperations ops) {
+                        settle(rules, filteringObjective.op() == Objective.Operation.ADD, true);
+                        pass(filteringObjective);
+                    }
+
+                    @Override
+                    public void onError(FlowRuleOperations ops) {
+                        settle(rules, filteringObjective.op() == Objective.Operation.ADD, false);
+                        fail(filteringObjective, ObjectiveError.FLOWINSTALLATIONFAILED);
+                    }
+                }));
     }
 
     @Override
@@ -95,34 +261,412 @@ public class OVSPipeline extends DefaultSingleTablePipeline
 //            return;
 //        }
         Collection<FlowRule> rules;
-        FlowRuleOperations.Builder flowOpsBuilder = FlowRuleOperations
-                .builder();
 
         rules = processForward(fwd);
+        ObjectiveCompletion completion = new ObjectiveCompletion(fwd);
+        List<FlowRule> changed = new ArrayList<>();
         switch (fwd.op()) {
         case ADD:
-            rules.stream().filter(Objects::nonNull)
-                    .forEach(flowOpsBuilder::add);
+            for (FlowRule rule : rules) {
+                if (rule != null && acquire(rule, fwd.appId(), completion)) {
+                    changed.add(rule);
+                }
+            }
             break;
         case REMOVE:
-            rules.stream().filter(Objects::nonNull)
-                    .forEach(flowOpsBuilder::remove);
+            for (FlowRule rule : rules) {
+                FlowRule installed = rule == null ? null : release(rule, fwd.appId());
+                if (installed != null) {
+                    changed.add(installed);
+                }
+            }
             break;
         default:
             fail(fwd, ObjectiveError.UNKNOWN);
             log.warn("Unknown forwarding type {}", fwd.op());
+            return;
+        }
+
+        if (changed.isEmpty() && !rules.isEmpty()) {
+            // every rule is installed or being installed, or still used by another objective
+            log.debug("Objective {} needs no flow change on {}", fwd.id(), deviceId);
+            completion.ready();
+            return;
+        }
+
+        completion.expect();
+        completion.ready();
+        if (fwd.op() == Objective.Operation.ADD) {
+            admit(completion, changed);
+        } else {
+            apply(completion, changed, false);
+        }
+    }
+
+    /**
+     * Check the new rules of an objective against the table limits.
+     * Below the soft limit the rules are installed at once. Past it, objectives wait in a bounded queue
+     * and are installed one at a time, so that the occupancy is exact when the hard limit is checked.
+     * An objective which would take a table past the hard limit is rejected.
+     */
+    private void admit(ObjectiveCompletion completion, List<FlowRule> rules) {
+        Integer full;
+        boolean queued = false;
+        boolean overflow = false;
+        List<QueuedObjective> expired = new ArrayList<>();
+        synchronized (this) {
+            full = tableOverLimit(rules, tableHardLimit);
+            if (full == null) {
+                if (admissionBusy || !admissionQueue.isEmpty() || tableOverLimit(rules, tableSoftLimit) != null) {
+                    pollExpired(expired);
+                    if (admissionQueue.isEmpty()) {
+                        log.info("Tables of {} past soft limit {}, queueing objectives", deviceId, tableSoftLimit);
+                    }
+                    if (admissionQueue.size() >= ADMISSION_QUEUE_CAPACITY) {
+                        overflow = true;
+                    } else {
+                        admissionQueue.addLast(new QueuedObjective(completion, rules));
+                        queued = true;
+                    }
+                } else {
+                    reserve(rules);
+                }
+            }
+        }
+        expired.forEach(this::expire);
+        if (full != null) {
+            reject(completion, rules, full);
+        } else if (overflow) {
+            forget(rules);
+            log.warn("Admission queue of {} is full, objective {} failed", deviceId, completion.objective.id());
+            completion.fail(ObjectiveError.UNKNOWN);
+        } else if (queued) {
+            admitNext(false);
+        } else {
+            apply(completion, rules, false);
+        }
+    }
+
+    /**
+     * Take the objectives which waited too long off the head of the admission queue.
+     */
+    private synchronized void pollExpired(List<QueuedObjective> expired) {
+        long now = System.currentTimeMillis();
+        while (!admissionQueue.isEmpty() && now - admissionQueue.peekFirst().queuedAt > ADMISSION_QUEUE_EXPIRY) {
+            expired.add(admissionQueue.pollFirst());
+        }
+    }
+
+    /**
+     * Fail a queued objective which could not be admitted in time. The sender may retry it later.
+     */
+    private void expire(QueuedObjective queued) {
+        forget(queued.rules);
+        log.warn("Objective {} to {} not admitted within {} ms, failed",
+                 queued.completion.objective.id(), deviceId, ADMISSION_QUEUE_EXPIRY);
+        queued.completion.fail(ObjectiveError.UNKNOWN);
+    }
+
+    /**
+     * Install the next queued objective, once the previous one is done.
+     * @param queuedDone true if a queued objective just completed
+     */
+    private void admitNext(boolean queuedDone) {
+        QueuedObjective next = null;
+        List<QueuedObjective> rejected = new ArrayList<>();
+        List<QueuedObjective> expired = new ArrayList<>();
+        synchronized (this) {
+            if (queuedDone) {
+                admissionBusy = false;
+            }
+            if (!admissionBusy) {
+                pollExpired(expired);
+            }
+            while (!admissionBusy && next == null && !admissionQueue.isEmpty()) {
+                QueuedObjective head = admissionQueue.pollFirst();
+                head.full = tableOverLimit(head.rules, tableHardLimit);
+                if (head.full != null) {
+                    rejected.add(head);
+                } else {
+                    next = head;
+                    admissionBusy = true;
+                    reserve(next.rules);
+                }
+            }
+        }
+        expired.forEach(this::expire);
+        rejected.forEach(queued -> reject(queued.completion, queued.rules, queued.full));
+        if (next != null) {
+            apply(next.completion, next.rules, true);
+        }
+    }
+
+    /**
+     * Reject an objective for lack of table space. UNSUPPORTED tells the sender not to retry.
+     */
+    private void reject(ObjectiveCompletion completion, List<FlowRule> rules, int table) {
+        forget(rules);
+        log.warn("Table {} of {} is at its hard limit of {} rules, objective {} rejected",
+                 table, deviceId, tableHardLimit, completion.objective.id());
+        completion.fail(ObjectiveError.UNSUPPORTED);
+    }
+
+    private void apply(ObjectiveCompletion completion, List<FlowRule> rules, boolean queued) {
+        boolean install = completion.objective.op() == Objective.Operation.ADD;
+        FlowRuleOperations.Builder flowOpsBuilder = FlowRuleOperations.builder();
+        for (FlowRule rule : rules) {
+            flowOpsBuilder = install ? flowOpsBuilder.add(rule) : flowOpsBuilder.remove(rule);
         }
 
         flowRuleService.apply(flowOpsBuilder
                 .build(new FlowRuleOperationsContext() {
                     @Override
                     public void onSuccess(FlowRuleOperations ops) {
-                        pass(fwd);
+                        settle(rules, install, true);
+                        if (install) {
+                            confirm(rules);
+                        }
+                        completion.succeed();
+                        admitNext(queued);
+                    }
+
+                    @Override
+                    public void onError(FlowRuleOperations ops) {
+                        settle(rules, install, false);
+                        if (install) {
+                            forget(rules);
+                        }
+                        completion.fail(ObjectiveError.FLOWINSTALLATIONFAILED);
+                        admitNext(queued);
+                    }
+                }));
+    }
+
+    /**
+     * Find a table the new rules would take past a limit, counting the rules being installed.
+     * @return the table, or null if the rules fit or the limit is disabled
+     */
+    private synchronized Integer tableOverLimit(List<FlowRule> rules, int limit) {
+        if (limit <= 0) {
+            return null;
+        }
+        Map<Integer, Integer> demand = new HashMap<>();
+        for (FlowRule rule : rules) {
+            int table = rule.tableId();
+            if (!tableRules(occupiedRules, table).contains(rule.id())
+                    && !tableRules(pendingRules, table).contains(rule.id())) {
+                demand.merge(table, 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : demand.entrySet()) {
+            int table = entry.getKey();
+            int occupancy = tableRules(occupiedRules, table).size() + tableRules(pendingRules, table).size();
+            if (occupancy + entry.getValue() > limit) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void reserve(List<FlowRule> rules) {
+        rules.forEach(rule -> tableRules(pendingRules, rule.tableId()).add(rule.id()));
+    }
+
+    /**
+     * Update the table occupancy when an install or remove completes.
+     */
+    private synchronized void settle(List<FlowRule> rules, boolean install, boolean success) {
+        for (FlowRule rule : rules) {
+            tableRules(pendingRules, rule.tableId()).remove(rule.id());
+            if (!success) {
+                continue;
+            }
+            if (install) {
+                tableRules(occupiedRules, rule.tableId()).add(rule.id());
+            } else {
+                tableRules(occupiedRules, rule.tableId()).remove(rule.id());
+            }
+        }
+    }
+
+    private synchronized void seedOccupancy(Iterable<FlowEntry> entries) {
+        entries.forEach(entry -> tableRules(occupiedRules, entry.tableId()).add(entry.id()));
+    }
+
+    /**
+     * Follow the rules added and removed on the device, by any application.
+     */
+    private synchronized void occupancyEvent(FlowRuleEvent event) {
+        FlowRule rule = event.subject();
+        if (event.type() == FlowRuleEvent.Type.RULE_ADDED) {
+            tableRules(occupiedRules, rule.tableId()).add(rule.id());
+        } else if (event.type() == FlowRuleEvent.Type.RULE_REMOVED) {
+            tableRules(occupiedRules, rule.tableId()).remove(rule.id());
+        }
+    }
+
+    private static Set<FlowId> tableRules(Map<Integer, Set<FlowId>> tables, int table) {
+        return tables.computeIfAbsent(table, k -> new HashSet<>());
+    }
+
+    /**
+     * Count a reference of an objective to a rule.
+     * An objective which needs a rule still being installed for another one completes with that install.
+     * @return true if the rule is new and has to be installed
+     */
+    private synchronized boolean acquire(FlowRule rule, ApplicationId owner, ObjectiveCompletion completion) {
+        RuleKey key = new RuleKey(rule);
+        RuleReference reference = installedRules.get(key);
+        boolean install = reference == null;
+        if (install) {
+            reference = new RuleReference(rule);
+            installedRules.put(key, reference);
+            RuleKey replaced = installedIds.put(rule.id(), key);
+            if (replaced != null && !replaced.equals(key)) {
+                // same match with a new treatment (e.g. another meter): the flow is modified in place
+                log.debug("Flow {} on {} modified, dropping its previous treatment", rule.id(), deviceId);
+                RuleReference previous = installedRules.remove(replaced);
+                if (previous != null) {
+                    reference.waiters.addAll(previous.waiters);
+                }
+            }
+        } else if (reference.pending) {
+            reference.waiters.add(completion);
+            completion.expect();
+        }
+        reference.acquire(owner);
+        completion.acquired.add(rule);
+        return install;
+    }
+
+    /**
+     * Drop a reference of an owner to a rule.
+     * @return the flow rule to remove, as it was installed, or null if the rule is still referenced
+     */
+    private synchronized FlowRule release(FlowRule rule, ApplicationId owner) {
+        RuleKey key = new RuleKey(rule);
+        RuleReference reference = installedRules.get(key);
+        if (reference == null) {
+            // not installed through this pipeliner instance, remove it anyway
+            return rule;
+        }
+        if (!reference.release(owner)) {
+            return null;
+        }
+        installedRules.remove(key);
+        installedIds.remove(reference.installed.id(), key);
+        return reference.installed;
+    }
+
+    /**
+     * Mark rules as installed, completing the objectives which waited for them.
+     */
+    private void confirm(List<FlowRule> rules) {
+        for (ObjectiveCompletion waiter : settleReferences(rules, true)) {
+            waiter.succeed();
+        }
+    }
+
+    /**
+     * Forget rules which failed to install, failing the objectives which waited for them.
+     */
+    private void forget(List<FlowRule> rules) {
+        for (ObjectiveCompletion waiter : settleReferences(rules, false)) {
+            waiter.fail(ObjectiveError.FLOWINSTALLATIONFAILED);
+        }
+    }
+
+    private synchronized List<ObjectiveCompletion> settleReferences(List<FlowRule> rules, boolean installed) {
+        List<ObjectiveCompletion> waiters = new ArrayList<>();
+        for (FlowRule rule : rules) {
+            RuleKey key = new RuleKey(rule);
+            RuleReference reference = installedRules.get(key);
+            if (reference == null || !reference.installed.id().equals(rule.id())) {
+                continue;
+            }
+            if (installed) {
+                reference.pending = false;
+            } else {
+                installedRules.remove(key);
+                installedIds.remove(rule.id(), key);
+            }
+            waiters.addAll(reference.waiters);
+            reference.waiters.clear();
+        }
+        return waiters;
+    }
+
+    /**
+     * Drop the references of a failed objective, removing the installed rules nobody else uses.
+     */
+    private void rollback(ObjectiveCompletion completion) {
+        List<FlowRule> unused = new ArrayList<>();
+        synchronized (this) {
+            for (FlowRule rule : completion.acquired) {
+                RuleKey key = new RuleKey(rule);
+                RuleReference reference = installedRules.get(key);
+                if (reference == null || !reference.release(completion.objective.appId())) {
+                    continue;
+                }
+                installedRules.remove(key);
+                installedIds.remove(reference.installed.id(), key);
+                if (!reference.pending) {
+                    unused.add(reference.installed);
+                }
+            }
+            completion.acquired.clear();
+        }
+        unused.forEach(rule -> applyRules(false, rule));
+    }
+
+    /**
+     * Handle an installed rule removed behind the back of the pipeliner, e.g. when the application
+     * owning the flow is uninstalled and its flows are purged. The rule is installed again on behalf
+     * of the other objectives using it, or dropped from the index so that the next ADD installs it.
+     */
+    private void removed(FlowRule rule) {
+        FlowRule reinstall = null;
+        synchronized (this) {
+            RuleKey key = installedIds.get(rule.id());
+            RuleReference reference = key == null ? null : installedRules.get(key);
+            if (reference == null || reference.pending) {
+                return;
+            }
+            reference.dropOwner(rule.appId());
+            installedIds.remove(rule.id(), key);
+            if (reference.owners.isEmpty()) {
+                installedRules.remove(key);
+                log.info("Flow {} on {} removed, dropped from the index", rule.id(), deviceId);
+                return;
+            }
+            ApplicationId owner = reference.owners.keySet().iterator().next();
+            FlowRule.Builder ruleBuilder = DefaultFlowRule.builder()
+                    .fromApp(owner).withPriority(rule.priority())
+                    .forDevice(deviceId).forTable(rule.tableId())
+                    .withSelector(rule.selector()).withTreatment(rule.treatment());
+            if (rule.isPermanent()) {
+                ruleBuilder.makePermanent();
+            } else {
+                ruleBuilder.makeTemporary(rule.timeout());
+            }
+            reinstall = ruleBuilder.build();
+            reference.installed = reinstall;
+            reference.pending = true;
+            installedIds.put(reinstall.id(), key);
+        }
+        log.info("Flow {} on {} removed, installing it again for {}", rule.id(), deviceId, reinstall.appId());
+        List<FlowRule> rules = Collections.singletonList(reinstall);
+        flowRuleService.apply(FlowRuleOperations.builder().add(reinstall)
+                .build(new FlowRuleOperationsContext() {
+                    @Override
+                    public void onSuccess(FlowRuleOperations ops) {
+                        settle(rules, true, true);
+                        confirm(rules);
                     }
 
                     @Override
                     public void onError(FlowRuleOperations ops) {
-                        fail(fwd, ObjectiveError.FLOWINSTALLATIONFAILED);
+                        forget(rules);
                     }
                 }));
     }
@@ -133,41 +677,180 @@ public class OVSPipeline extends DefaultSingleTablePipeline
     }
 
     private void initializePipeline() {
-        processL3fwdTable(true);
-        processMacTable(true);
+        if (ingressFilter) {
+            processMissRule(true, INGRESS_TABLE, null);
+        }
+        processStageMissRules(L3FWD_TABLE);
+        processStageMissRules(MAC_TABLE);
+    }
+
+    /**
+     * Install the miss rules of a stage: the last table of its block drops, the others go to the next table.
+     */
+    private synchronized void processStageMissRules(int stage) {
+        int base = physicalTable(stage);
+        int tables = Math.max(1, stageBands.getOrDefault(stage, Collections.emptyList()).size());
+        for (int i = 0; i < tables; i++) {
+            processMissRule(true, base + i, i < tables - 1 ? base + i + 1 : null);
+        }
     }
 
-    private void processL3fwdTable(boolean install) {
+    private void processMissRule(boolean install, int table, Integer gotoTable) {
         TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
         TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
 
-        treatment.drop();
-
+        if (gotoTable == null) {
+            treatment.drop();
+        } else {
+            treatment.transition(gotoTable);
+        }
 
         FlowRule rule;
         rule = DefaultFlowRule.builder().forDevice(deviceId)
                 .withSelector(selector.build())
                 .withTreatment(treatment.build())
                 .withPriority(TABLE_MISS_PRIORITY).fromApp(appId)
-                .makePermanent().forTable(L3FWD_TABLE).build();
+                .makePermanent().forTable(table).build();
 
         applyRules(install, rule);
     }
 
-    private void processMacTable(boolean install) {
-        TrafficSelector.Builder selector = DefaultTrafficSelector.builder();
-        TrafficTreatment.Builder treatment = DefaultTrafficTreatment.builder();
+    /**
+     * Map a logical table, as used by applications in transition(), to the table of the device.
+     */
+    private int physicalTable(int logicalTable) {
+        int table = megaflowLayout ? logicalTable * MEGAFLOW_BLOCK_SIZE : logicalTable;
+        return ingressFilter ? table + 1 : table;
+    }
 
-        treatment.drop();
+    /**
+     * Describe which fields, and which prefix lengths, a selector matches.
+     */
+    private String maskShape(TrafficSelector selector) {
+        return selector.criteria().stream()
+                .map(criterion -> criterion instanceof IPCriterion ?
+                        criterion.type() + "/" + ((IPCriterion) criterion).ip().prefixLength() :
+                        criterion.type().toString())
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
 
-        FlowRule rule;
-        rule = DefaultFlowRule.builder().forDevice(deviceId)
-                .withSelector(selector.build())
-                .withTreatment(treatment.build())
-                .withPriority(TABLE_MISS_PRIORITY).fromApp(appId)
-                .makePermanent().forTable(MAC_TABLE).build();
+    /**
+     * Find the table of a stage block for a rule of one mask shape and priority.
+     * A packet stops at the first table of the chain holding a matching rule, so the tables of a block
+     * hold descending, non overlapping priority bands: a rule is never shadowed by a lower priority rule
+     * of an earlier table. A new shape gets a table of its own when its priority can go at the end of
+     * the chain, else it joins a table whose band it fits, where OpenFlow priorities order the rules.
+     * @param allocate false to only look up where an installed rule was placed
+     */
+    private synchronized int shapeTable(int stage, TrafficSelector selector, int priority, boolean allocate) {
+        Map<String, Integer> placements = shapePlacements.computeIfAbsent(stage, k -> new HashMap<>());
+        String shape = maskShape(selector);
+        String placement = shape + "@" + priority;
+        Integer table = placements.get(placement);
+        if (table != null) {
+            return table;
+        }
+        int base = physicalTable(stage);
+        if (!allocate) {
+            return base;
+        }
 
-        applyRules(install, rule);
+        List<PriorityBand> bands = stageBands.computeIfAbsent(stage, k -> new ArrayList<>());
+        PriorityBand band = placeBand(bands, shape, priority);
+        if (band == null) {
+            band = new PriorityBand(base + bands.size());
+            if (!bands.isEmpty()) {
+                processMissRule(true, band.table, null);
+                processMissRule(true, band.table - 1, band.table);
+            }
+            bands.add(band);
+        }
+        band.place(shape, priority);
+        placements.put(placement, band.table);
+        log.info("Shape {} at priority {} of {} placed in table {}, {} shapes in the table",
+                 shape, priority, deviceId, band.table, band.shapes.size());
+        return band.table;
+    }
+
+    /**
+     * Choose the band of a new placement.
+     * @return the band, or null if a new table has to be appended to the chain
+     */
+    private PriorityBand placeBand(List<PriorityBand> bands, String shape, int priority) {
+        for (int i = 0; i < bands.size(); i++) {
+            if (bands.get(i).shapes.contains(shape) && fits(bands, i, priority)) {
+                return bands.get(i);
+            }
+        }
+        if (bands.isEmpty() || bands.get(bands.size() - 1).minPriority >= priority) {
+            if (bands.size() < MEGAFLOW_BLOCK_SIZE) {
+                return null;
+            }
+            log.warn("Table block of {} is full, shape {} shares table {}",
+                     deviceId, shape, bands.get(bands.size() - 1).table);
+        }
+        for (int i = 0; i < bands.size(); i++) {
+            if (fits(bands, i, priority)) {
+                return bands.get(i);
+            }
+        }
+        // not reached: the bands are ordered, a priority always fits one of them
+        return bands.get(bands.size() - 1);
+    }
+
+    /**
+     * Check that a priority can join a band and keep the bands of the chain in descending order.
+     * Empty bands, the gaps left by a recovery, do not bound the priority.
+     */
+    private static boolean fits(List<PriorityBand> bands, int index, int priority) {
+        PriorityBand previous = occupiedNeighbour(bands, index, -1);
+        PriorityBand next = occupiedNeighbour(bands, index, 1);
+        return (previous == null || previous.minPriority >= priority)
+                && (next == null || next.maxPriority <= priority);
+    }
+
+    /**
+     * Find the nearest band holding a shape, before or after a band of the chain.
+     * @param step -1 to look towards the head of the chain, 1 towards its end
+     * @return the band, or null if there is none
+     */
+    private static PriorityBand occupiedNeighbour(List<PriorityBand> bands, int index, int step) {
+        for (int i = index + step; i >= 0 && i < bands.size(); i += step) {
+            if (!bands.get(i).shapes.isEmpty()) {
+                return bands.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recover the placements of a stage block from the rules already on the device,
+     * so that a re-initialized pipeliner keeps finding and extending the same tables.
+     */
+    private synchronized void rebuildPlacements(Iterable<FlowEntry> entries) {
+        for (FlowEntry entry : entries) {
+            if (entry.appId() == appId.id()) {
+                // miss rules of the pipeline itself
+                continue;
+            }
+            for (int stage : new int[]{L3FWD_TABLE, MAC_TABLE}) {
+                int index = entry.tableId() - physicalTable(stage);
+                if (index < 0 || index >= MEGAFLOW_BLOCK_SIZE) {
+                    continue;
+                }
+                List<PriorityBand> bands = stageBands.computeIfAbsent(stage, k -> new ArrayList<>());
+                while (bands.size() <= index) {
+                    bands.add(new PriorityBand(physicalTable(stage) + bands.size()));
+                }
+                String shape = maskShape(entry.selector());
+                bands.get(index).place(shape, entry.priority());
+                shapePlacements.computeIfAbsent(stage, k -> new HashMap<>())
+                        .put(shape + "@" + entry.priority(), entry.tableId());
+            }
+        }
+        stageBands.forEach((stage, bands) -> log.info("Recovered {} tables of block {} on {}",
+                                                      bands.size(), stage, deviceId));
     }
 
     private void applyRules(boolean install, FlowRule rule) {
@@ -177,6 +860,7 @@ public class OVSPipeline extends DefaultSingleTablePipeline
         flowRuleService.apply(ops.build(new FlowRuleOperationsContext() {
             @Override
             public void onSuccess(FlowRuleOperations ops) {
+                settle(Collections.singletonList(rule), install, true);
                 log.info("ONOSW provisioned " + rule.tableId() + " table");
             }
 
@@ -227,15 +911,25 @@ public class OVSPipeline extends DefaultSingleTablePipeline
         ) && (selector.getCriterion(Type.IPV4_SRC) != null || selector.getCriterion(Type.IPV4_DST) != null)) {
             transition = null;
             forTable = L3FWD_TABLE;
-            return reassemblyFlowRule(ruleBuilder, tb, transition, forTable);
-        }
-
-        // MAC table flow rules
-        if ((selector.getCriterion(Type.ETH_DST) != null ||
+        } else if ((selector.getCriterion(Type.ETH_DST) != null ||
                 selector.getCriterion(Type.ETH_SRC) != null)
                 || tb.allInstructions().contains(Instructions.createNoAction())) {
+            // MAC table flow rules
             transition = null;
             forTable = MAC_TABLE;
+        }
+
+        if (megaflowLayout || ingressFilter) {
+            if (tb.tableTransition() != null) {
+                transition = physicalTable(tb.tableTransition().tableId());
+            }
+            int stage = forTable == null ? L3FWD_TABLE : forTable;
+            forTable = megaflowLayout ?
+                    shapeTable(stage, selector, fwd.priority(), fwd.op() == Objective.Operation.ADD) :
+                    physicalTable(stage);
+            return reassemblyFlowRule(ruleBuilder, tb, transition, forTable);
+        }
+        if (forTable != null) {
             return reassemblyFlowRule(ruleBuilder, tb, transition, forTable);
         }
         return Collections.singletonList(ruleBuilder.build());
@@ -248,7 +942,12 @@ public class OVSPipeline extends DefaultSingleTablePipeline
         if (transition != null) {
             TrafficTreatment.Builder newTraffic = DefaultTrafficTreatment
                     .builder();
-            tb.allInstructions().forEach(t -> newTraffic.add(t));
+            tb.allInstructions().stream()
+                    .filter(t -> t.type() != Instruction.Type.TABLE)
+                    .forEach(t -> newTraffic.add(t));
+            if (tb.metered() != null) {
+                newTraffic.meter(tb.metered().meterId());
+            }
             newTraffic.transition(transition);
             ruleBuilder.withTreatment(newTraffic.build());
         } else {
@@ -261,10 +960,191 @@ public class OVSPipeline extends DefaultSingleTablePipeline
     }
 
     private void fail(Objective obj, ObjectiveError error) {
+        log.warn("Objective {} from {} failed on {}: {}", obj.id(), obj.appId().name(), deviceId, error);
         obj.context().ifPresent(context -> context.onError(obj, error));
     }
 
     private void pass(Objective obj) {
         obj.context().ifPresent(context -> context.onSuccess(obj));
     }
+
+    /**
+     * One table of a megaflow stage block: the shapes it holds and the range of their priorities.
+     */
+    private static final class PriorityBand {
+        private final int table;
+        private final Set<String> shapes = new HashSet<>();
+        private int minPriority = Integer.MAX_VALUE;
+        private int maxPriority = Integer.MIN_VALUE;
+
+        private PriorityBand(int table) {
+            this.table = table;
+        }
+
+        private void place(String shape, int priority) {
+            shapes.add(shape);
+            minPriority = Math.min(minPriority, priority);
+            maxPriority = Math.max(maxPriority, priority);
+        }
+    }
+
+    /**
+     * A ForwardingObjective waiting for table space, with its new rules.
+     */
+    private static final class QueuedObjective {
+        private final ObjectiveCompletion completion;
+        private final List<FlowRule> rules;
+        private final long queuedAt = System.currentTimeMillis();
+        private Integer full;
+
+        private QueuedObjective(ObjectiveCompletion completion, List<FlowRule> rules) {
+            this.completion = completion;
+            this.rules = rules;
+        }
+    }
+
+    /**
+     * Completion of a ForwardingObjective: it passes once its own rules and the rules it shares with
+     * objectives still being installed are in place, and fails at most once, on the first error.
+     */
+    private final class ObjectiveCompletion {
+        private final ForwardingObjective objective;
+        // one count held until the objective is ready, one per install the objective waits for
+        private final AtomicInteger remaining = new AtomicInteger(1);
+        private final AtomicBoolean done = new AtomicBoolean();
+        // rules the objective holds a reference to, guarded by the pipeliner
+        private final List<FlowRule> acquired = new ArrayList<>();
+
+        private ObjectiveCompletion(ForwardingObjective objective) {
+            this.objective = objective;
+        }
+
+        private void expect() {
+            remaining.incrementAndGet();
+        }
+
+        private void ready() {
+            succeed();
+        }
+
+        private void succeed() {
+            if (remaining.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                pass(objective);
+            }
+        }
+
+        private void fail(ObjectiveError error) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            OVSPipeline.this.fail(objective, error);
+            if (objective.op() == Objective.Operation.ADD) {
+                rollback(this);
+            }
+        }
+    }
+
+    private final class InternalFlowRuleListener implements FlowRuleListener {
+        @Override
+        public void event(FlowRuleEvent event) {
+            if (!deviceId.equals(event.subject().deviceId()) || ACTIVE_PIPELINES.get(deviceId) != OVSPipeline.this) {
+                return;
+            }
+            occupancyEvent(event);
+            if (event.type() == FlowRuleEvent.Type.RULE_REMOVED) {
+                removed(event.subject());
+            }
+        }
+    }
+
+    /**
+     * Identity of an installed rule: table, priority, selector and treatment.
+     * The hash is computed once, as selectors and treatments are costly to hash.
+     */
+    private static final class RuleKey {
+        private final int table;
+        private final int priority;
+        private final TrafficSelector selector;
+        private final TrafficTreatment treatment;
+        private final int hash;
+
+        private RuleKey(FlowRule rule) {
+            this.table = rule.tableId();
+            this.priority = rule.priority();
+            this.selector = rule.selector();
+            this.treatment = rule.treatment();
+            this.hash = Objects.hash(table, priority, selector, treatment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RuleKey)) {
+                return false;
+            }
+            RuleKey that = (RuleKey) obj;
+            return hash == that.hash
+                    && table == that.table
+                    && priority == that.priority
+                    && selector.equals(that.selector)
+                    && treatment.equals(that.treatment);
+        }
+    }
+
+    /**
+     * An installed rule, as it was sent to the device, and the reference counts of its owners.
+     */
+    private static final class RuleReference {
+        private FlowRule installed;
+        // true until the install completes, with the objectives waiting for it
+        private boolean pending = true;
+        private final List<ObjectiveCompletion> waiters = new ArrayList<>();
+        private final Map<ApplicationId, Integer> owners = new HashMap<>();
+        private int total;
+
+        private RuleReference(FlowRule installed) {
+            this.installed = installed;
+        }
+
+        private void acquire(ApplicationId owner) {
+            owners.merge(owner, 1, Integer::sum);
+            total++;
+        }
+
+        /**
+         * @return true when the last reference is dropped
+         */
+        private boolean release(ApplicationId owner) {
+            Integer count = owners.get(owner);
+            if (count == null) {
+                return false;
+            }
+            if (count == 1) {
+                owners.remove(owner);
+            } else {
+                owners.put(owner, count - 1);
+            }
+            return --total == 0;
+        }
+
+        /**
+         * Drop every reference of an application, e.g. when its flows are purged.
+         */
+        private void dropOwner(short appId) {
+            owners.entrySet().removeIf(owner -> {
+                if (owner.getKey().id() != appId) {
+                    return false;
+                }
+                total -= owner.getValue();
+                return true;
+            });
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.LatencyHistogram;
+import org.onosproject.ovsmanage.intf.LatencySummary;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * CLI load generator, creates, lists and deletes bridges through OvsManageService.
+ * All bridges are named with a per-run prefix and deleted before the command returns,
+ * also when it is interrupted: the registry is swept for the prefix, so bridges a worker
+ * created but did not record before it stopped are found too.
+ */
+@Command(scope = "onos", name = "ovs-bench",
+        description = "Measure bridge create/list/delete throughput and latency")
+public class BenchCommand extends AbstractShellCommand {
+
+    private static final String HEADER_FORMAT = "%-8s %8s %8s %10s %10s %10s %10s %10s %10s";
+    private static final String RESULT_FORMAT = "%-8s %8d %8d %10.1f %10.1f %10d %10d %10d %10d";
+
+    // OVS bridge names are interface names, at most 15 characters
+    private static final int MAX_NAME_LENGTH = 15;
+    private static final int WORKER_STOP_TIMEOUT = 30;
+
+    @Argument(index = 0, name = "count", description = "number of bridges to create and delete",
+            required = true, multiValued = false)
+    private int count;
+
+    @Option(name = "-w", aliases = "--workers", description = "number of concurrent workers",
+            required = false, multiValued = false)
+    private int workers = 4;
+
+    @Option(name = "-p", aliases = "--prefix", description = "name prefix of the benchmark bridges",
+            required = false, multiValued = false)
+    private String prefix = "ovsb";
+
+    @Option(name = "-t", aliases = "--type", description = "type of Bridge, 'core'/'access'",
+            required = false, multiValued = false)
+    private String bridgeType = "access";
+
+    private OvsManageService ovsService;
+    private String runPrefix;
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+
+    @Override
+    protected void execute() {
+        OvsManageService.OvsDeviceType deviceType;
+        if (bridgeType.toLowerCase().equals("core")) {
+            deviceType = OvsManageService.OvsDeviceType.CORE;
+        } else if (bridgeType.toLowerCase().equals("access")) {
+            deviceType = OvsManageService.OvsDeviceType.ACCESS;
+        } else {
+            print("usage:  ovs-bench [-w workers] [-p prefix] [-t 'core'/'access'] count");
+            return;
+        }
+
+        runPrefix = prefix + "-" + Long.toString(System.currentTimeMillis() % (36 * 36 * 36 * 36), 36) + "-";
+        if (count <= 0 || runPrefix.length() + String.valueOf(count).length() > MAX_NAME_LENGTH) {
+            print("count must be positive and prefix short enough for %d character bridge names", MAX_NAME_LENGTH);
+            return;
+        }
+
+        ovsService = AbstractShellCommand.get(OvsManageService.class);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, workers), groupedThreads("onos/ovsmanager", "bench-%d"));
+        try {
+            print("Bridge name prefix: %s", runPrefix);
+            print(HEADER_FORMAT, "Phase", "Ops", "Failed", "Seconds", "Ops/sec",
+                  "p50 us", "p90 us", "p99 us", "Max us");
+            run(executor, "create", i -> {
+                String name = runPrefix + i;
+                if (ovsService.createOvs(name, deviceType)) {
+                    created.add(name);
+                    return true;
+                }
+                return false;
+            });
+            run(executor, "list", i -> !ovsService.getOvs(deviceType).isEmpty());
+            run(executor, "delete", i -> {
+                String name = runPrefix + i;
+                if (!created.contains(name)) {
+                    return false;
+                }
+                if (ovsService.deleteOvs(name)) {
+                    created.remove(name);
+                    return true;
+                }
+                return false;
+            });
+        } catch (InterruptedException e) {
+            print("Interrupted, cleaning up");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            cleanUp(executor);
+        }
+    }
+
+    /**
+     * Run count operations on the workers and print their throughput and latency.
+     */
+    private void run(ExecutorService executor, String phase, IntPredicate operation) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < Math.max(1, workers); w++) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    long opStart = System.nanoTime();
+                    if (!operation.test(i)) {
+                        failed.incrementAndGet();
+                    }
+                    latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - opStart));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                print("%s worker failed: %s", phase, e.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencySummary summary = latency.summary();
+        print(RESULT_FORMAT, phase, summary.count(), failed.get(), seconds, summary.count() / seconds,
+              summary.p50(), summary.p90(), summary.p99(), summary.max());
+    }
+
+    /**
+     * Delete every bridge of this run still in the registry, once the workers have stopped.
+     */
+    private void cleanUp(ExecutorService executor) {
+        // storage calls fail on an interrupted thread, restore the flag afterwards
+        boolean interrupted = Thread.interrupted();
+        try {
+            executor.awaitTermination(WORKER_STOP_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        Set<String> remaining = new TreeSet<>(created);
+        ovsService.getBridgeNames().stream()
+                .filter(name -> name.startsWith(runPrefix))
+                .forEach(remaining::add);
+        if (!remaining.isEmpty()) {
+            print("Deleting %d remaining benchmark bridges", remaining.size());
+            remaining.removeIf(ovsService::deleteOvs);
+            created.clear();
+            if (!remaining.isEmpty()) {
+                print("Failed to delete: %s", remaining);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.LatencySummary;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.util.Map;
+
+/**
+ * CLI to show how long bridges take to get ready.
+ */
+@Command(scope = "onos", name = "ovs-bridge-readiness",
+        description = "Show time from bridge creation request to every provisioning stage")
+public class BridgeReadinessCommand extends AbstractShellCommand {
+
+    private static final String HEADER_FORMAT = "%-22s %-7s %8s %8s %8s %8s %8s";
+    private static final String ROW_FORMAT = "%-22s %-7s %8d %8d %8d %8d %8d";
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+
+        print(HEADER_FORMAT, "Stage", "Type", "Count", "p50 ms", "p90 ms", "p99 ms", "Max ms");
+        for (Map.Entry<OvsManageService.BridgeStage, Map<OvsManageService.OvsDeviceType, LatencySummary>> stage
+                : ovsService.getReadinessLatencies().entrySet()) {
+            stage.getValue().forEach((type, summary) ->
+                    print(ROW_FORMAT, stage.getKey(), type, summary.count(),
+                          summary.p50(), summary.p90(), summary.p99(), summary.max()));
+        }
+    }
+}
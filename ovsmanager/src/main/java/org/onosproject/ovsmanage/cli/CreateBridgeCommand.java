@@ -17,6 +17,7 @@ package org.onosproject.ovsmanage.cli;
 
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
 //import org.onosproject.cli.AbstractShellCommand;
 import org.onosproject.cli.AbstractShellCommand;
 import org.onosproject.ovsmanage.intf.OvsManageService;
@@ -29,6 +30,7 @@ import org.onosproject.ovsmanage.intf.OvsManageService;
 public class CreateBridgeCommand extends AbstractShellCommand {
 
     private static final String CREATE_BRIDGE_FORMAT = "Create Bridge: %s";
+    private static final String READY_FORMAT = "Bridge ready: %s";
 
     @Argument(index = 0, name = "bridge-name", description = "name of Bridge",
             required = true, multiValued = false)
@@ -38,6 +40,10 @@ public class CreateBridgeCommand extends AbstractShellCommand {
             required = true, multiValued = false)
     private String bridgeType;
 
+    @Option(name = "-w", aliases = "--wait", description = "milliseconds to wait until the bridge is ready",
+            required = false, multiValued = false)
+    private long waitMillis = 0;
+
     @Override
     protected void execute() {
 
@@ -59,6 +65,9 @@ public class CreateBridgeCommand extends AbstractShellCommand {
 
         if (ovsService.createOvs(bridgeName, deviceType)) {
             print(CREATE_BRIDGE_FORMAT, bridgeName);
+            if (waitMillis > 0) {
+                print(READY_FORMAT, ovsService.waitUntilReady(bridgeName, waitMillis));
+            }
         } else {
             print(CREATE_BRIDGE_FORMAT, "fail");
         }
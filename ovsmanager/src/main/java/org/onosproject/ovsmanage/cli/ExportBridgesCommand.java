@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.io.IOException;
+
+/**
+ * CLI to export the bridge registry to a snapshot file.
+ */
+@Command(scope = "onos", name = "export-bridges",
+        description = "Export all bridges to a snapshot file")
+public class ExportBridgesCommand extends AbstractShellCommand {
+
+    private static final String EXPORT_FORMAT = "Export Bridges: %s";
+
+    @Argument(index = 0, name = "file", description = "path of the snapshot file",
+            required = true, multiValued = false)
+    private String file;
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+
+        try {
+            print(EXPORT_FORMAT, ovsService.exportBridges(file) + " bridges to " + file);
+        } catch (IOException e) {
+            print(EXPORT_FORMAT, "fail, " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.FailedObjective;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * CLI to show the ForwardingObjectives which failed after all retries.
+ */
+@Command(scope = "onos", name = "ovs-failed-objectives",
+        description = "Show ForwardingObjectives which failed after all retries")
+public class FailedObjectivesCommand extends AbstractShellCommand {
+
+    private static final String FAILED_FORMAT = "%s Device Id: %s Objective Id: %d Attempts: %d Error: %s";
+
+    @Option(name = "-c", aliases = "--clear", description = "clear the list after showing it",
+            required = false, multiValued = false)
+    private boolean clear = false;
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+
+        List<FailedObjective> failed = ovsService.getFailedObjectives();
+        print("Failed objective count: %d", failed.size());
+        for (FailedObjective objective : failed) {
+            print(FAILED_FORMAT, new Date(objective.timestamp()), objective.deviceId(),
+                  objective.objective().id(), objective.attempts(), objective.error());
+        }
+
+        if (clear) {
+            ovsService.clearFailedObjectives();
+        }
+    }
+}
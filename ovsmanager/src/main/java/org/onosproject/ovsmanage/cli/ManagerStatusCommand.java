@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+/**
+ * CLI to show the readiness of OVS Manager.
+ */
+@Command(scope = "onos", name = "ovs-manager-status",
+        description = "Show the readiness state of OVS Manager")
+public class ManagerStatusCommand extends AbstractShellCommand {
+
+    private static final String STATE_FORMAT = "OVS Manager state: %s";
+    private static final String SUPPRESSED_FORMAT = "Suppressed device events: %d";
+    private static final String LOOKUP_FORMAT = "Bridge name lookups answered locally: %d of %d";
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+        print(STATE_FORMAT, ovsService.getState());
+        print(SUPPRESSED_FORMAT, ovsService.getSuppressedEventCount());
+        print(LOOKUP_FORMAT, ovsService.getLocalNameLookupCount(), ovsService.getNameLookupCount());
+    }
+}
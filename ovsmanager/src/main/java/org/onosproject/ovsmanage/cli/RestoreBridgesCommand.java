@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.io.IOException;
+
+/**
+ * CLI to re-create the bridges of a snapshot file.
+ */
+@Command(scope = "onos", name = "restore-bridges",
+        description = "Re-create the bridges of a snapshot file with their original datapath IDs")
+public class RestoreBridgesCommand extends AbstractShellCommand {
+
+    private static final String RESTORE_FORMAT = "Restore Bridges: %s";
+
+    @Argument(index = 0, name = "file", description = "path of the snapshot file",
+            required = true, multiValued = false)
+    private String file;
+
+    @Option(name = "-p", aliases = "--parallelism", description = "number of bridges created concurrently",
+            required = false, multiValued = false)
+    private int parallelism = 8;
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+
+        try {
+            print(RESTORE_FORMAT, ovsService.restoreBridges(file, parallelism) + " bridges from " + file);
+        } catch (IOException e) {
+            print(RESTORE_FORMAT, "fail, " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.util.Map;
+
+/**
+ * CLI to show the mask diversity of the tables of a bridge.
+ */
+@Command(scope = "onos", name = "ovs-table-masks",
+        description = "Show how many match field shapes share each table of a bridge")
+public class TableMasksCommand extends AbstractShellCommand {
+
+    private static final String TABLE_FORMAT = "Table %3d  rules: %6d  mask shapes: %3d";
+    private static final String SHAPE_FORMAT = "    %6d  %s";
+
+    @Argument(index = 0, name = "bridge-name", description = "name of Bridge",
+            required = true, multiValued = false)
+    private String bridgeName;
+
+    @Option(name = "-v", aliases = "--verbose", description = "list the mask shapes of every table",
+            required = false, multiValued = false)
+    private boolean verbose = false;
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+
+        Map<Integer, Map<String, Integer>> tables = ovsService.getTableMaskShapes(bridgeName);
+        if (tables.isEmpty()) {
+            print("No rules on bridge %s", bridgeName);
+            return;
+        }
+        tables.forEach((table, shapes) -> {
+            print(TABLE_FORMAT, table, shapes.values().stream().mapToInt(Integer::intValue).sum(), shapes.size());
+            if (verbose) {
+                shapes.forEach((shape, count) -> print(SHAPE_FORMAT, count, shape.isEmpty() ? "(match all)" : shape));
+            }
+        });
+    }
+}
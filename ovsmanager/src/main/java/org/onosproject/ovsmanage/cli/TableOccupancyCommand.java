@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.cli;
+
+import org.apache.karaf.shell.commands.Argument;
+import org.apache.karaf.shell.commands.Command;
+import org.onosproject.cli.AbstractShellCommand;
+import org.onosproject.ovsmanage.intf.OvsManageService;
+
+import java.util.Map;
+
+/**
+ * CLI to show the rule count of every table of the bridges.
+ */
+@Command(scope = "onos", name = "ovs-table-occupancy",
+        description = "Show the rules per table of the bridges, and the tables near or at their limit")
+public class TableOccupancyCommand extends AbstractShellCommand {
+
+    private static final String BRIDGE_FORMAT = "%s  table limits: soft %d, hard %d (0 is disabled)";
+    private static final String TABLE_FORMAT = "    Table %3d  rules: %7d  %s";
+
+    @Argument(index = 0, name = "bridge-name", description = "name of Bridge, all bridges if omitted",
+            required = false, multiValued = false)
+    private String bridgeName = null;
+
+    @Override
+    protected void execute() {
+        OvsManageService ovsService = AbstractShellCommand.get(OvsManageService.class);
+
+        Map<String, Map<Integer, Integer>> bridges = ovsService.getTableOccupancy();
+        if (bridgeName != null && !bridges.containsKey(bridgeName)) {
+            print("Bridge %s does not exist", bridgeName);
+            return;
+        }
+        bridges.forEach((name, tables) -> {
+            if (bridgeName != null && !bridgeName.equals(name)) {
+                return;
+            }
+            int softLimit = ovsService.getTableSoftLimit(name);
+            int hardLimit = ovsService.getTableHardLimit(name);
+            print(BRIDGE_FORMAT, name, softLimit, hardLimit);
+            tables.forEach((table, rules) -> print(TABLE_FORMAT, table, rules, mark(rules, softLimit, hardLimit)));
+        });
+    }
+
+    private static String mark(int rules, int softLimit, int hardLimit) {
+        if (hardLimit > 0 && rules >= hardLimit) {
+            return "FULL";
+        }
+        if (softLimit > 0 && rules >= softLimit) {
+            return "NEAR LIMIT";
+        }
+        return "";
+    }
+}
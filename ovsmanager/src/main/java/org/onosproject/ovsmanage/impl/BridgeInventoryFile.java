@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+
+/**
+ * Bridge inventory snapshot file.
+ *
+ * <pre>
+ * magic "OVSI" (4 bytes) | { 1 (1 byte) | length (varint) | BridgeRecord (compact layout) }* | 0 (1 byte)
+ * </pre>
+ *
+ * Reading streams the records to the consumer, one at a time. Writing encodes the records as the
+ * Iterable yields them; exportBridges passes the values of the bridge registry, which ConsistentMap
+ * returns as one collection, so an export does hold the whole inventory.
+ */
+final class BridgeInventoryFile {
+
+    private static final int MAGIC = 0x4F565349;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    private BridgeInventoryFile() {
+    }
+
+    /**
+     * Write a snapshot, the file is replaced atomically once complete.
+     * @param file : the snapshot file.
+     * @param records : the records to write.
+     * @return : number of records written.
+     * @throws IOException : if the file can not be written.
+     */
+    static int write(Path file, Iterable<BridgeRecord> records) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (OutputStream stream = Files.newOutputStream(temp);
+             Output output = new Output(stream, BUFFER_SIZE)) {
+            output.writeInt(MAGIC);
+            for (BridgeRecord record : records) {
+                byte[] bytes = BridgeRecordSerializer.toBytes(record);
+                output.writeByte(RECORD);
+                output.writeVarInt(bytes.length, true);
+                output.writeBytes(bytes);
+                count++;
+            }
+            output.writeByte(END);
+        } catch (KryoException e) {
+            throw new IOException(e);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Read a snapshot.
+     * @param file : the snapshot file.
+     * @param consumer : called with every record, in file order.
+     * @return : number of records read.
+     * @throws IOException : if the file can not be read or is not a complete snapshot.
+     */
+    static int read(Path file, Consumer<BridgeRecord> consumer) throws IOException {
+        int count = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             Input input = new Input(stream, BUFFER_SIZE)) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file + " is not a bridge inventory snapshot");
+            }
+            for (byte marker = input.readByte(); marker != END; marker = input.readByte()) {
+                if (marker != RECORD) {
+                    throw new IOException("Corrupted snapshot " + file);
+                }
+                byte[] bytes = input.readBytes(input.readVarInt(true));
+                consumer.accept(BridgeRecordSerializer.readRecord(new Input(bytes)));
+                count++;
+            }
+        } catch (KryoException e) {
+            throw new IOException("Truncated or corrupted snapshot " + file, e);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onlab.packet.IpPrefix;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flow.criteria.IPCriterion;
+import org.onosproject.net.meter.Band;
+import org.onosproject.net.meter.DefaultBand;
+import org.onosproject.net.meter.DefaultMeterRequest;
+import org.onosproject.net.meter.Meter;
+import org.onosproject.net.meter.MeterId;
+import org.onosproject.net.meter.MeterRequest;
+import org.onosproject.net.meter.MeterService;
+import org.onosproject.ovsmanage.intf.OvsManageService.OvsDeviceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Rate limit profiles of the traffic OVS Manager forwards, and the meters implementing them.
+ * A profile is either a Switch type, or a configured IPv4 prefix which wins over the type
+ * when the selector matches an address inside it. Every bridge gets one meter per profile,
+ * shared by all its flows of that profile.
+ */
+final class BridgeMeterPolicies {
+
+    private static final String TYPE_PROFILE = "type:";
+    private static final String PREFIX_PROFILE = "prefix:";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final MeterService meterService;
+    private final ApplicationId appId;
+
+    private final Map<String, Long> rates = new HashMap<>();
+    private final Map<IpPrefix, String> prefixProfiles = new HashMap<>();
+    private long burstSize;
+
+    private final Map<DeviceId, Map<String, AllocatedMeter>> meters = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param meterService : MeterService to allocate meters with.
+     * @param appId : Application owning the meters.
+     */
+    BridgeMeterPolicies(MeterService meterService, ApplicationId appId) {
+        this.meterService = meterService;
+        this.appId = appId;
+    }
+
+    /**
+     * Set the profiles.
+     * @param typeRates : Rate in kbps per Switch type, 0 for no limit.
+     * @param prefixRates : Rate in kbps per IPv4 prefix, 0 for no limit.
+     * @param burst : Burst size in kb.
+     * @return : the profiles whose rate or burst changed.
+     */
+    synchronized Set<String> configure(Map<OvsDeviceType, Long> typeRates, Map<IpPrefix, Long> prefixRates,
+                                       long burst) {
+        Map<String, Long> newRates = new HashMap<>();
+        typeRates.forEach((type, rate) -> newRates.put(TYPE_PROFILE + type, rate));
+        prefixProfiles.clear();
+        prefixRates.forEach((prefix, rate) -> {
+            prefixProfiles.put(prefix, PREFIX_PROFILE + prefix);
+            newRates.put(PREFIX_PROFILE + prefix, rate);
+        });
+
+        Set<String> changed = new HashSet<>();
+        Set<String> profiles = new HashSet<>(rates.keySet());
+        profiles.addAll(newRates.keySet());
+        for (String profile : profiles) {
+            if (burst != burstSize || !Objects.equals(rates.get(profile), newRates.get(profile))) {
+                changed.add(profile);
+            }
+        }
+        rates.clear();
+        rates.putAll(newRates);
+        burstSize = burst;
+        return changed;
+    }
+
+    /**
+     * Find the profile of a flow.
+     * @param type : Switch type of the bridge.
+     * @param selector : Match fields of the flow.
+     * @return : the most specific configured prefix containing the IPv4 source or destination,
+     *           else the Switch type.
+     */
+    synchronized String profileOf(OvsDeviceType type, TrafficSelector selector) {
+        IpPrefix best = null;
+        for (Criterion.Type field : new Criterion.Type[]{Criterion.Type.IPV4_SRC, Criterion.Type.IPV4_DST}) {
+            Criterion criterion = selector.getCriterion(field);
+            if (!(criterion instanceof IPCriterion)) {
+                continue;
+            }
+            IpPrefix matched = ((IPCriterion) criterion).ip();
+            for (IpPrefix prefix : prefixProfiles.keySet()) {
+                if (prefix.contains(matched) && (best == null || prefix.prefixLength() > best.prefixLength())) {
+                    best = prefix;
+                }
+            }
+        }
+        return best != null ? prefixProfiles.get(best) : TYPE_PROFILE + type;
+    }
+
+    /**
+     * Get the meter of a profile on a bridge, allocating it on first use.
+     * @param deviceId : The DeviceId of the bridge.
+     * @param profile : the profile.
+     * @return : the MeterId, or null if the profile has no limit.
+     */
+    synchronized MeterId meterFor(DeviceId deviceId, String profile) {
+        AllocatedMeter allocated = meters.getOrDefault(deviceId, Collections.emptyMap()).get(profile);
+        if (allocated != null) {
+            return allocated.meterId;
+        }
+        return allocate(deviceId, profile);
+    }
+
+    /**
+     * Detach the meter of a profile from a bridge, so that the next meterFor() allocates
+     * a new one with the current rate. The detached meter stays installed until withdrawn.
+     * @param deviceId : The DeviceId of the bridge.
+     * @param profile : the profile.
+     * @return : the detached meter, or null if the profile had none on the bridge.
+     */
+    synchronized AllocatedMeter retire(DeviceId deviceId, String profile) {
+        Map<String, AllocatedMeter> deviceMeters = meters.get(deviceId);
+        return deviceMeters == null ? null : deviceMeters.remove(profile);
+    }
+
+    /**
+     * Remove a detached meter from its bridge.
+     * @param deviceId : The DeviceId of the bridge.
+     * @param allocated : the meter returned by retire().
+     */
+    void withdraw(DeviceId deviceId, AllocatedMeter allocated) {
+        meterService.withdraw(request(deviceId, allocated.rate, allocated.burst).remove(), allocated.meterId);
+        log.info("Meter {} withdrawn from {}", allocated.meterId, deviceId);
+    }
+
+    /**
+     * Withdraw every meter of a bridge, when the bridge is removed.
+     * @param deviceId : The DeviceId of the bridge.
+     */
+    void release(DeviceId deviceId) {
+        Map<String, AllocatedMeter> deviceMeters;
+        synchronized (this) {
+            deviceMeters = meters.remove(deviceId);
+        }
+        if (deviceMeters != null) {
+            deviceMeters.values().forEach(allocated -> withdraw(deviceId, allocated));
+        }
+    }
+
+    private MeterId allocate(DeviceId deviceId, String profile) {
+        long rate = rates.getOrDefault(profile, 0L);
+        if (rate <= 0) {
+            return null;
+        }
+        Meter meter = meterService.submit(request(deviceId, rate, burstSize).add());
+        meters.computeIfAbsent(deviceId, k -> new HashMap<>())
+                .put(profile, new AllocatedMeter(meter.id(), rate, burstSize));
+        log.info("Meter {} of {} kbps for {} on {}", meter.id(), rate, profile, deviceId);
+        return meter.id();
+    }
+
+    private MeterRequest.Builder request(DeviceId deviceId, long rate, long burst) {
+        Band band = DefaultBand.builder()
+                .ofType(Band.Type.DROP)
+                .withRate(rate)
+                .burstSize(burst)
+                .build();
+        return DefaultMeterRequest.builder()
+                .forDevice(deviceId)
+                .fromApp(appId)
+                .withUnit(Meter.Unit.KB_PER_SEC)
+                .burst()
+                .withBands(Collections.singleton(band));
+    }
+
+    /**
+     * A meter and the limits it was created with.
+     */
+    static final class AllocatedMeter {
+        private final MeterId meterId;
+        private final long rate;
+        private final long burst;
+
+        private AllocatedMeter(MeterId meterId, long rate, long burst) {
+            this.meterId = meterId;
+            this.rate = rate;
+            this.burst = burst;
+        }
+    }
+}
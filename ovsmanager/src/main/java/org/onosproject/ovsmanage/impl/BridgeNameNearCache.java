@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.MapEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Local negative-lookup filter in front of the bridge registry.
+ * A counting Bloom filter of the registered names, kept coherent by the registry events:
+ * when it says a name is absent, the registry is not asked; otherwise the registry decides.
+ *
+ * Local inserts are counted right away, before their INSERT event comes back,
+ * so a bridge just created here is never reported absent.
+ */
+final class BridgeNameNearCache implements MapEventListener<String, BridgeRecord> {
+
+    private static final int HASHES = 4;
+    private static final int MAX_COUNT = 0xFF;
+
+    private byte[] counters;
+    private final Set<String> pendingInserts = new HashSet<>();
+    // events received while a rebuild reads the registry, null when no rebuild is running
+    private List<MapEvent<String, BridgeRecord>> rebuildEvents;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong localAnswers = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param size : Number of counters.
+     */
+    BridgeNameNearCache(int size) {
+        counters = new byte[Math.max(HASHES, size)];
+    }
+
+    /**
+     * Reload the filter from the registry names, one rebuild at a time.
+     * Reading the names is not atomic with the events: the events received meanwhile are counted
+     * in the current filter and replayed on the names read, so that no INSERT is lost.
+     * @param names : reads all names in the registry.
+     * @param size : Number of counters.
+     */
+    void rebuild(Supplier<? extends Iterable<String>> names, int size) {
+        synchronized (this) {
+            rebuildEvents = new ArrayList<>();
+        }
+        Set<String> registered = new HashSet<>();
+        try {
+            names.get().forEach(registered::add);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                rebuildEvents = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            for (MapEvent<String, BridgeRecord> event : rebuildEvents) {
+                if (event.type() == MapEvent.Type.INSERT) {
+                    registered.add(event.key());
+                } else if (event.type() == MapEvent.Type.REMOVE) {
+                    registered.remove(event.key());
+                }
+            }
+            rebuildEvents = null;
+            // names inserted here whose event has not come back stay counted once
+            registered.addAll(pendingInserts);
+            counters = new byte[Math.max(HASHES, size)];
+            registered.forEach(this::add);
+        }
+    }
+
+    /**
+     * Check if a name may be in the registry.
+     * @param name : Bridge name.
+     * @return : false if the name is surely not registered.
+     */
+    boolean mightContain(String name) {
+        lookups.incrementAndGet();
+        int hash1 = name.hashCode();
+        int hash2 = spread(hash1);
+        synchronized (this) {
+            for (int i = 0; i < HASHES; i++) {
+                if (counters[index(hash1, hash2, i)] == 0) {
+                    localAnswers.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a name about to be inserted into the registry by this instance.
+     * @param name : Bridge name.
+     */
+    synchronized void localInsert(String name) {
+        if (pendingInserts.add(name)) {
+            add(name);
+        }
+    }
+
+    /**
+     * Undo localInsert, when the registry insert did not happen.
+     * @param name : Bridge name.
+     */
+    synchronized void abortLocalInsert(String name) {
+        if (pendingInserts.remove(name)) {
+            remove(name);
+        }
+    }
+
+    /**
+     * Number of existence checks.
+     * @return : lookup count.
+     */
+    long lookups() {
+        return lookups.get();
+    }
+
+    /**
+     * Number of existence checks answered without the registry.
+     * @return : local answer count.
+     */
+    long localAnswers() {
+        return localAnswers.get();
+    }
+
+    @Override
+    public synchronized void event(MapEvent<String, BridgeRecord> event) {
+        if (rebuildEvents != null) {
+            rebuildEvents.add(event);
+        }
+        switch (event.type()) {
+            case INSERT:
+                if (!pendingInserts.remove(event.key())) {
+                    add(event.key());
+                }
+                break;
+            case REMOVE:
+                remove(event.key());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void add(String name) {
+        int hash1 = name.hashCode();
+        int hash2 = spread(hash1);
+        for (int i = 0; i < HASHES; i++) {
+            int index = index(hash1, hash2, i);
+            if ((counters[index] & MAX_COUNT) < MAX_COUNT) {
+                counters[index]++;
+            }
+        }
+    }
+
+    private void remove(String name) {
+        int hash1 = name.hashCode();
+        int hash2 = spread(hash1);
+        for (int i = 0; i < HASHES; i++) {
+            int index = index(hash1, hash2, i);
+            int count = counters[index] & MAX_COUNT;
+            // a saturated counter has lost its count and stays set
+            if (count > 0 && count < MAX_COUNT) {
+                counters[index]--;
+            }
+        }
+    }
+
+    private int index(int hash1, int hash2, int i) {
+        return Math.floorMod(hash1 + i * hash2, counters.length);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) | 1;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.ovsmanage.intf.LatencyHistogram;
+import org.onosproject.ovsmanage.intf.LatencySummary;
+import org.onosproject.ovsmanage.intf.OvsManageService.BridgeStage;
+import org.onosproject.ovsmanage.intf.OvsManageService.OvsDeviceType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Track bridges from creation request until their ForwardingObjectives are confirmed.
+ * The time from REQUESTED to every later stage goes to a LatencyHistogram per stage and Switch type.
+ * Bridges which never get ready are forgotten after STALE_TIMEOUT, so memory stays bounded.
+ */
+final class BridgeReadinessTracker {
+
+    private static final long STALE_TIMEOUT = TimeUnit.MINUTES.toNanos(10);
+
+    private final Map<DeviceId, Progress> inProgress = new ConcurrentHashMap<>();
+    private final Map<BridgeStage, Map<OvsDeviceType, LatencyHistogram>> histograms =
+            new EnumMap<>(BridgeStage.class);
+
+    /**
+     * Constructor.
+     */
+    BridgeReadinessTracker() {
+        for (BridgeStage stage : BridgeStage.values()) {
+            Map<OvsDeviceType, LatencyHistogram> byType = new EnumMap<>(OvsDeviceType.class);
+            for (OvsDeviceType type : OvsDeviceType.values()) {
+                byType.put(type, new LatencyHistogram());
+            }
+            histograms.put(stage, byType);
+        }
+    }
+
+    /**
+     * Start tracking a bridge.
+     * @param deviceId : The DeviceId the bridge will connect with.
+     * @param type : Switch type, bridges without a type are not tracked.
+     */
+    void requested(DeviceId deviceId, OvsDeviceType type) {
+        if (type == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        inProgress.values().removeIf(progress -> now - progress.requestedAt > STALE_TIMEOUT);
+        inProgress.put(deviceId, new Progress(type, now));
+        record(deviceId, BridgeStage.REQUESTED);
+    }
+
+    /**
+     * Record that a tracked bridge reached a stage, the first time only.
+     * OBJECTIVES_CONFIRMED is derived from objectiveSent/objectiveConfirmed/provisioned instead.
+     * @param deviceId : The DeviceId of the bridge.
+     * @param stage : the stage.
+     */
+    void reached(DeviceId deviceId, BridgeStage stage) {
+        if (stage != BridgeStage.OBJECTIVES_CONFIRMED) {
+            record(deviceId, stage);
+        }
+    }
+
+    /**
+     * Count a ForwardingObjective sent to a tracked bridge.
+     * @param deviceId : The DeviceId of the bridge.
+     */
+    void objectiveSent(DeviceId deviceId) {
+        Progress progress = inProgress.get(deviceId);
+        if (progress != null) {
+            synchronized (progress) {
+                progress.objectivesSent++;
+            }
+        }
+    }
+
+    /**
+     * Count a ForwardingObjective confirmed by the bridge.
+     * @param deviceId : The DeviceId of the bridge.
+     */
+    void objectiveConfirmed(DeviceId deviceId) {
+        Progress progress = inProgress.get(deviceId);
+        if (progress != null) {
+            synchronized (progress) {
+                progress.objectivesConfirmed++;
+            }
+            checkConfirmed(deviceId, progress);
+        }
+    }
+
+    /**
+     * Mark that all ForwardingObjectives of a tracked bridge have been sent.
+     * @param deviceId : The DeviceId of the bridge.
+     */
+    void provisioned(DeviceId deviceId) {
+        Progress progress = inProgress.get(deviceId);
+        if (progress != null) {
+            synchronized (progress) {
+                progress.provisioned = true;
+            }
+            checkConfirmed(deviceId, progress);
+        }
+    }
+
+    /**
+     * Stop tracking a bridge, waiters are told it is not ready.
+     * @param deviceId : The DeviceId of the bridge.
+     */
+    void abandon(DeviceId deviceId) {
+        Progress progress = inProgress.remove(deviceId);
+        if (progress != null) {
+            progress.ready.complete(false);
+        }
+    }
+
+    /**
+     * Get the future completed when a tracked bridge is ready.
+     * @param deviceId : The DeviceId of the bridge.
+     * @return : the future, null if the bridge is not tracked.
+     */
+    CompletableFuture<Boolean> readyFuture(DeviceId deviceId) {
+        Progress progress = inProgress.get(deviceId);
+        return progress == null ? null : progress.ready;
+    }
+
+    /**
+     * Summarize the time from REQUESTED to every stage.
+     * @return : summaries per stage and Switch type.
+     */
+    Map<BridgeStage, Map<OvsDeviceType, LatencySummary>> summaries() {
+        Map<BridgeStage, Map<OvsDeviceType, LatencySummary>> summaries = new EnumMap<>(BridgeStage.class);
+        histograms.forEach((stage, byType) -> {
+            Map<OvsDeviceType, LatencySummary> typeSummaries = new EnumMap<>(OvsDeviceType.class);
+            byType.forEach((type, histogram) -> typeSummaries.put(type, histogram.summary()));
+            summaries.put(stage, typeSummaries);
+        });
+        return summaries;
+    }
+
+    private void checkConfirmed(DeviceId deviceId, Progress progress) {
+        synchronized (progress) {
+            if (!progress.provisioned || progress.objectivesConfirmed < progress.objectivesSent) {
+                return;
+            }
+        }
+        if (record(deviceId, BridgeStage.OBJECTIVES_CONFIRMED)) {
+            inProgress.remove(deviceId, progress);
+            progress.ready.complete(true);
+        }
+    }
+
+    private boolean record(DeviceId deviceId, BridgeStage stage) {
+        Progress progress = inProgress.get(deviceId);
+        if (progress == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        synchronized (progress) {
+            if (progress.stageTimes[stage.ordinal()] != 0) {
+                return false;
+            }
+            progress.stageTimes[stage.ordinal()] = now;
+        }
+        histograms.get(stage).get(progress.type)
+                .record(TimeUnit.NANOSECONDS.toMillis(now - progress.requestedAt));
+        return true;
+    }
+
+    /**
+     * Provisioning progress of one bridge.
+     */
+    private static final class Progress {
+        private final OvsDeviceType type;
+        private final long requestedAt;
+        private final long[] stageTimes = new long[BridgeStage.values().length];
+        private final CompletableFuture<Boolean> ready = new CompletableFuture<>();
+        private int objectivesSent;
+        private int objectivesConfirmed;
+        private boolean provisioned;
+
+        private Progress(OvsDeviceType type, long requestedAt) {
+            this.type = type;
+            this.requestedAt = requestedAt;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.onlab.util.KryoNamespace;
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+
+/**
+ * Compact Kryo serializer of BridgeRecord.
+ *
+ * <pre>
+ * version 1 (1 byte) | name (Kryo string) | type code (1 byte) | datapath ID (varint)
+ *     | extension length (varint) | extension: OVSDB node (Kryo string)
+ * </pre>
+ *
+ * Version 1 is the only layout. New fields are appended to the length prefixed extension and the
+ * version stays 1: readers skip the extension fields they do not know. The version only changes
+ * for a layout older readers can not skip through.
+ * Records without an extension end after the datapath ID and have no OVSDB node, so a record
+ * must end its input: streams frame every record.
+ */
+final class BridgeRecordSerializer extends Serializer<BridgeRecord> {
+
+    static final int FORMAT_VERSION = 1;
+    private static final int EXTENSION_BUFFER_SIZE = 64;
+
+    private static final KryoNamespace NAMESPACE = new KryoNamespace.Builder()
+            .register(String.class)
+            .register(new BridgeRecordSerializer(), BridgeRecord.class)
+            .build();
+
+    /**
+     * Constructor, records are immutable.
+     */
+    BridgeRecordSerializer() {
+        super(false, true);
+    }
+
+    /**
+     * Get the KryoNamespace of the bridge registry, registers only String and BridgeRecord.
+     * @return : the KryoNamespace.
+     */
+    static KryoNamespace namespace() {
+        return NAMESPACE;
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, BridgeRecord record) {
+        writeRecord(output, record);
+    }
+
+    @Override
+    public BridgeRecord read(Kryo kryo, Input input, Class<BridgeRecord> type) {
+        return readRecord(input);
+    }
+
+    /**
+     * Write a record in the compact layout.
+     * @param output : Kryo output.
+     * @param record : the record.
+     */
+    static void writeRecord(Output output, BridgeRecord record) {
+        output.writeByte(FORMAT_VERSION);
+        output.writeString(record.name());
+        output.writeByte(record.type() == null ? DatapathIdCodec.UNKNOWN_TYPE
+                                 : DatapathIdCodec.typeCode(record.type()));
+        output.writeLong(record.datapathId(), true);
+
+        Output extension = new Output(EXTENSION_BUFFER_SIZE, -1);
+        extension.writeString(record.ovsdbNode());
+        output.writeVarInt(extension.position(), true);
+        output.writeBytes(extension.getBuffer(), 0, extension.position());
+    }
+
+    /**
+     * Write a record in the compact layout into a new array.
+     * @param record : the record.
+     * @return : the record bytes.
+     */
+    static byte[] toBytes(BridgeRecord record) {
+        Output output = new Output(EXTENSION_BUFFER_SIZE, -1);
+        writeRecord(output, record);
+        return output.toBytes();
+    }
+
+    /**
+     * Read a record in the compact layout, the record must end the input.
+     * @param input : Kryo input.
+     * @return : the record.
+     */
+    static BridgeRecord readRecord(Input input) {
+        int version = input.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new KryoException("Unsupported BridgeRecord format version " + version);
+        }
+        String name = input.readString();
+        int typeCode = input.readByte();
+        long datapathId = input.readLong(true);
+        String ovsdbNode = null;
+        if (!input.eof()) {
+            // fields this version does not know follow the OVSDB node, skipped with the extension
+            Input extension = new Input(input.readBytes(input.readVarInt(true)));
+            ovsdbNode = extension.readString();
+        }
+        return new BridgeRecord(name, DatapathIdCodec.typeForCode(typeCode), datapathId, ovsdbNode);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.ovsmanage.intf.OvsManageService.OvsDeviceType;
+
+/**
+ * Datapath ID layout of the bridges created by OVS Manager.
+ *
+ * <pre>
+ *  63       56 55      48 47                                        0
+ * +-----------+----------+-------------------------------------------+
+ * | reserved  |   type   |                 sequence                  |
+ * +-----------+----------+-------------------------------------------+
+ * </pre>
+ *
+ * Type 0 is the legacy layout, where the 16 hex digits were read as a decimal
+ * number and core bridges were offset by 100000000. Any switch with an all decimal
+ * datapath ID looks like a legacy bridge, so typeOf() never classifies type 0;
+ * whether a legacy bridge belongs to OVS Manager is decided by the bridge registry.
+ */
+final class DatapathIdCodec {
+
+    /**
+     * Returned by parse() for device IDs which are not OpenFlow datapath IDs.
+     * Never produced by encode(), as the reserved bits are always zero.
+     */
+    static final long INVALID = -1L;
+
+    private static final int TYPE_SHIFT = 48;
+    private static final long TYPE_MASK = 0xFFL;
+    private static final long RESERVED_MASK = 0xFF00000000000000L;
+    private static final long SEQUENCE_MASK = (1L << TYPE_SHIFT) - 1;
+
+    // the legacy layout, and the serialized type of a bridge not created by OVS Manager
+    static final int UNKNOWN_TYPE = 0;
+    private static final int CORE_TYPE = 1;
+    private static final int ACCESS_TYPE = 2;
+
+    private static final long LEGACY_CORE_CARDINALITY = 100000000L;
+    private static final String OF_SCHEME = "of:";
+    private static final int DPID_DIGITS = 16;
+
+    private DatapathIdCodec() {
+    }
+
+    /**
+     * Build the datapath ID of a bridge.
+     * @param type : Switch type.
+     * @param sequence : Per type sequence number, at most 48 bits.
+     * @return : the datapath ID.
+     */
+    static long encode(OvsDeviceType type, long sequence) {
+        if ((sequence & ~SEQUENCE_MASK) != 0) {
+            throw new IllegalArgumentException("Sequence out of range: " + sequence);
+        }
+        return ((long) typeCode(type) << TYPE_SHIFT) | sequence;
+    }
+
+    /**
+     * Format a datapath ID the way OVSDB expects it in other_config:datapath-id.
+     * @param datapathId : the datapath ID.
+     * @return : 16 hex digits.
+     */
+    static String toDatapathIdString(long datapathId) {
+        return String.format("%016x", datapathId);
+    }
+
+    /**
+     * Parse the datapath ID out of an OpenFlow DeviceId, in place and without allocation.
+     * @param deviceId : The DeviceId, such as "of:0001000000000001".
+     * @return : the datapath ID, or INVALID.
+     */
+    static long parse(DeviceId deviceId) {
+        String id = deviceId.toString();
+        if (id.length() != OF_SCHEME.length() + DPID_DIGITS || !id.startsWith(OF_SCHEME)) {
+            return INVALID;
+        }
+        long datapathId = 0;
+        for (int i = OF_SCHEME.length(); i < id.length(); i++) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if (digit < 0) {
+                return INVALID;
+            }
+            datapathId = (datapathId << 4) | digit;
+        }
+        return datapathId;
+    }
+
+    /**
+     * Classify a datapath ID.
+     * @param datapathId : the datapath ID.
+     * @return : the Switch type, or null if the datapath ID does not use the current layout.
+     */
+    static OvsDeviceType typeOf(long datapathId) {
+        if ((datapathId & RESERVED_MASK) != 0) {
+            return null;
+        }
+        switch ((int) ((datapathId >>> TYPE_SHIFT) & TYPE_MASK)) {
+            case CORE_TYPE:
+                return OvsDeviceType.CORE;
+            case ACCESS_TYPE:
+                return OvsDeviceType.ACCESS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Classify a datapath ID in the legacy layout.
+     * Only meaningful for a bridge the registry already holds as created by OVS Manager.
+     * @param datapathId : the datapath ID.
+     * @return : the Switch type, or null if the datapath ID does not fit the legacy layout.
+     */
+    static OvsDeviceType legacyTypeOf(long datapathId) {
+        if ((datapathId & (RESERVED_MASK | TYPE_MASK << TYPE_SHIFT)) != 0) {
+            return null;
+        }
+        long legacy = legacyValue(datapathId);
+        if (legacy < 0) {
+            return null;
+        }
+        return legacy > LEGACY_CORE_CARDINALITY ? OvsDeviceType.CORE : OvsDeviceType.ACCESS;
+    }
+
+    /**
+     * Get the sequence number of a datapath ID.
+     * @param datapathId : the datapath ID.
+     * @return : the sequence number, or -1 if the datapath ID does not use the current layout.
+     */
+    static long sequenceOf(long datapathId) {
+        return typeOf(datapathId) == null ? -1 : datapathId & SEQUENCE_MASK;
+    }
+
+    /**
+     * Get the code of a Switch type, as used in the type bits.
+     * @param type : Switch type.
+     * @return : the type code.
+     */
+    static int typeCode(OvsDeviceType type) {
+        switch (type) {
+            case CORE:
+                return CORE_TYPE;
+            case ACCESS:
+                return ACCESS_TYPE;
+            default:
+                throw new IllegalArgumentException("Unknown OvsDeviceType " + type);
+        }
+    }
+
+    /**
+     * Get the Switch type of a type code.
+     * @param code : the type code.
+     * @return : Switch type, or null for UNKNOWN_TYPE or an unknown code.
+     */
+    static OvsDeviceType typeForCode(int code) {
+        switch (code) {
+            case CORE_TYPE:
+                return OvsDeviceType.CORE;
+            case ACCESS_TYPE:
+                return OvsDeviceType.ACCESS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Read the hex digits of a legacy datapath ID as decimal digits.
+     * @param datapathId : the datapath ID.
+     * @return : the decimal value, or -1 if a digit is not decimal.
+     */
+    private static long legacyValue(long datapathId) {
+        long value = 0;
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            int digit = (int) ((datapathId >>> shift) & 0xF);
+            if (digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.net.DeviceId;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fold the add/remove/availability events of a device into one net state transition.
+ * Every event restarts the quiet period of its device; when the device stays quiet,
+ * the net state is compared with the last stable one: provisioning runs only on a change to up,
+ * and the release of the device state only on a change to down.
+ * All state is confined to the single thread of the executor.
+ */
+final class DeviceEventCoalescer {
+
+    private final ScheduledExecutorService executor;
+    private final Consumer<DeviceId> provisioner;
+    private final Consumer<DeviceId> releaser;
+
+    private final Map<DeviceId, PendingState> pendingStates = new HashMap<>();
+    private final Set<DeviceId> stableUp = new HashSet<>();
+
+    private final AtomicLong suppressedCount = new AtomicLong();
+    private final AtomicLong transitionCount = new AtomicLong();
+
+    private volatile long quietPeriod;
+
+    /**
+     * Constructor.
+     * @param executor : Single threaded executor owning the coalescer state.
+     * @param quietPeriod : Quiet period in milliseconds.
+     * @param provisioner : Called once a device settles in the up state.
+     * @param releaser : Called once a device settles in the down state.
+     */
+    DeviceEventCoalescer(ScheduledExecutorService executor, long quietPeriod, Consumer<DeviceId> provisioner,
+                         Consumer<DeviceId> releaser) {
+        this.executor = executor;
+        this.quietPeriod = quietPeriod;
+        this.provisioner = provisioner;
+        this.releaser = releaser;
+    }
+
+    /**
+     * Set the quiet period, applies to events received afterwards.
+     * @param quietPeriod : Quiet period in milliseconds.
+     */
+    void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Record a device event.
+     * @param deviceId : The DeviceId of the device.
+     * @param up : If the device is added and available after the event.
+     */
+    void submit(DeviceId deviceId, boolean up) {
+        executor.execute(() -> fold(deviceId, up));
+    }
+
+    /**
+     * Check if a device last settled in the up state, must be called on the executor.
+     * @param deviceId : The DeviceId of the device.
+     * @return : if the stable state of the device is up.
+     */
+    boolean isStableUp(DeviceId deviceId) {
+        return stableUp.contains(deviceId);
+    }
+
+    /**
+     * Number of events which did not cause a provisioning run.
+     * @return : suppressed event count.
+     */
+    long suppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * Number of stable state transitions.
+     * @return : transition count.
+     */
+    long transitionCount() {
+        return transitionCount.get();
+    }
+
+    private void fold(DeviceId deviceId, boolean up) {
+        PendingState pending = pendingStates.get(deviceId);
+        if (pending == null) {
+            pending = new PendingState();
+            pendingStates.put(deviceId, pending);
+        } else {
+            pending.settleTask.cancel(false);
+            suppressedCount.incrementAndGet();
+        }
+        pending.up = up;
+        pending.settleTask = executor.schedule(() -> settle(deviceId), quietPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    private void settle(DeviceId deviceId) {
+        PendingState pending = pendingStates.remove(deviceId);
+        if (pending == null) {
+            return;
+        }
+        if (pending.up == stableUp.contains(deviceId)) {
+            suppressedCount.incrementAndGet();
+            return;
+        }
+
+        transitionCount.incrementAndGet();
+        if (pending.up) {
+            stableUp.add(deviceId);
+            provisioner.accept(deviceId);
+        } else {
+            stableUp.remove(deviceId);
+            releaser.accept(deviceId);
+        }
+    }
+
+    /**
+     * Net state of a device inside its quiet period.
+     */
+    private static final class PendingState {
+        private boolean up;
+        private ScheduledFuture<?> settleTask;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flowobjective.FlowObjectiveService;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveContext;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.ovsmanage.intf.FailedObjective;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Per device send window for ForwardingObjectives.
+ * At most windowSize objectives are in flight to one device, the rest wait in a FIFO queue.
+ * A slot is released by onSuccess/onError, or by the attempt timeout when no callback arrives.
+ * Failures are retried with jittered exponential backoff and go to the dead letter list
+ * once maxRetries is exhausted. UNSUPPORTED objectives, which the pipeline refuses, are not retried.
+ * A timed out objective is not resent, as the pipeline may still hold it, e.g. in its admission queue:
+ * it goes to the dead letter list until a late callback settles it.
+ */
+final class ForwardingObjectiveWindow {
+
+    private static final long MAX_BACKOFF = 10000;
+    private static final int DEAD_LETTER_CAPACITY = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final FlowObjectiveService flowObjectiveService;
+    private final ScheduledExecutorService retryExecutor;
+    private final Consumer<DeviceId> installedListener;
+
+    private final Map<DeviceId, DeviceWindow> windows = new ConcurrentHashMap<>();
+    private final Deque<FailedObjective> deadLetters = new ArrayDeque<>();
+
+    private volatile int windowSize;
+    private volatile int maxRetries;
+    private volatile long baseBackoff;
+    private volatile long attemptTimeout;
+
+    /**
+     * Constructor.
+     * @param flowObjectiveService : FlowObjectiveService to send objectives to.
+     * @param retryExecutor : Executor to schedule retries on.
+     * @param installedListener : Called with the DeviceId whenever an objective succeeds.
+     */
+    ForwardingObjectiveWindow(FlowObjectiveService flowObjectiveService, ScheduledExecutorService retryExecutor,
+                              Consumer<DeviceId> installedListener) {
+        this.flowObjectiveService = flowObjectiveService;
+        this.retryExecutor = retryExecutor;
+        this.installedListener = installedListener;
+    }
+
+    /**
+     * Set the window and retry parameters.
+     * @param windowSize : Maximum objectives in flight per device.
+     * @param maxRetries : Retries before an objective goes to the dead letter list.
+     * @param baseBackoff : Backoff of the first retry, in milliseconds.
+     * @param attemptTimeout : Time an attempt may hold its slot waiting for its callback, in milliseconds.
+     */
+    void configure(int windowSize, int maxRetries, long baseBackoff, long attemptTimeout) {
+        this.windowSize = Math.max(1, windowSize);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseBackoff = Math.max(1, baseBackoff);
+        this.attemptTimeout = Math.max(1, attemptTimeout);
+    }
+
+    /**
+     * Send a ForwardingObjective through the window of its device.
+     * @param deviceId : The DeviceId of target device.
+     * @param builder : Builder of the objective, add(context) is called on every attempt.
+     */
+    void submit(DeviceId deviceId, ForwardingObjective.Builder builder) {
+        submit(deviceId, builder, null);
+    }
+
+    /**
+     * Send a ForwardingObjective through the window of its device.
+     * @param deviceId : The DeviceId of target device.
+     * @param builder : Builder of the objective, add(context) is called on every attempt.
+     * @param onInstalled : Called once the objective succeeds, may be null.
+     */
+    void submit(DeviceId deviceId, ForwardingObjective.Builder builder, Runnable onInstalled) {
+        windows.computeIfAbsent(deviceId, DeviceWindow::new).offer(new Request(builder, onInstalled));
+    }
+
+    /**
+     * Drop the window of a removed device, with its queued objectives.
+     * Callbacks and timeouts of objectives still in flight are ignored afterwards.
+     * @param deviceId : The DeviceId of the removed device.
+     */
+    void removeDevice(DeviceId deviceId) {
+        DeviceWindow window = windows.remove(deviceId);
+        if (window != null) {
+            int dropped = window.close();
+            log.debug("Window of {} dropped, with {} queued objectives", deviceId, dropped);
+        }
+    }
+
+    /**
+     * Get the objectives which failed after all retries, oldest first.
+     * @return : the dead letter list.
+     */
+    List<FailedObjective> deadLetters() {
+        synchronized (deadLetters) {
+            return new ArrayList<>(deadLetters);
+        }
+    }
+
+    /**
+     * Empty the dead letter list.
+     */
+    void clearDeadLetters() {
+        synchronized (deadLetters) {
+            deadLetters.clear();
+        }
+    }
+
+    private long backoff(int attempts) {
+        long delay = Math.min(MAX_BACKOFF, baseBackoff << Math.min(attempts - 1, 20));
+        return ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+    }
+
+    private void deadLetter(FailedObjective failed) {
+        synchronized (deadLetters) {
+            if (deadLetters.size() >= DEAD_LETTER_CAPACITY) {
+                deadLetters.removeFirst();
+            }
+            deadLetters.addLast(failed);
+        }
+    }
+
+    private void undoDeadLetter(FailedObjective failed) {
+        synchronized (deadLetters) {
+            deadLetters.removeIf(letter -> letter == failed);
+        }
+    }
+
+    /**
+     * One ForwardingObjective and its attempts.
+     */
+    private static final class Request {
+        private final ForwardingObjective.Builder builder;
+        private final Runnable onInstalled;
+        private int attempts;
+
+        private Request(ForwardingObjective.Builder builder, Runnable onInstalled) {
+            this.builder = builder;
+            this.onInstalled = onInstalled;
+        }
+    }
+
+    /**
+     * In flight slots and queue of one device.
+     */
+    private final class DeviceWindow {
+        private final DeviceId deviceId;
+        private final Deque<Request> queue = new ArrayDeque<>();
+        private int inFlight;
+        private boolean closed;
+
+        private DeviceWindow(DeviceId deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        private void offer(Request request) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (inFlight >= windowSize) {
+                    queue.addLast(request);
+                    return;
+                }
+                inFlight++;
+            }
+            send(request);
+        }
+
+        private synchronized int close() {
+            closed = true;
+            int dropped = queue.size();
+            queue.clear();
+            return dropped;
+        }
+
+        private void release() {
+            Request next;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                next = queue.pollFirst();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            send(next);
+        }
+
+        private void send(Request request) {
+            request.attempts++;
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicBoolean released = new AtomicBoolean();
+            AtomicReference<ScheduledFuture<?>> timeout = new AtomicReference<>();
+            AtomicReference<FailedObjective> timedOut = new AtomicReference<>();
+            ForwardingObjective objective = request.builder.add(new ObjectiveContext() {
+                @Override
+                public void onSuccess(Objective objective) {
+                    if (done.compareAndSet(false, true)) {
+                        settle(timeout.get(), released, timedOut.get());
+                        installedListener.accept(deviceId);
+                        if (request.onInstalled != null) {
+                            request.onInstalled.run();
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(Objective objective, ObjectiveError error) {
+                    if (done.compareAndSet(false, true)) {
+                        settle(timeout.get(), released, timedOut.get());
+                        retry(request, (ForwardingObjective) objective, error);
+                    }
+                }
+            });
+            timeout.set(retryExecutor.schedule(() -> {
+                if (!done.get() && released.compareAndSet(false, true)) {
+                    log.warn("ForwardingObjective {} to {} got no callback in {} ms, waiting without resending",
+                             objective.id(), deviceId, attemptTimeout);
+                    // ObjectiveError has no timeout value in this ONOS version
+                    FailedObjective failed = new FailedObjective(deviceId, objective, ObjectiveError.UNKNOWN,
+                                                                 request.attempts, System.currentTimeMillis());
+                    timedOut.set(failed);
+                    deadLetter(failed);
+                    release();
+                    if (done.get()) {
+                        // the callback raced with the timeout
+                        undoDeadLetter(failed);
+                    }
+                }
+            }, attemptTimeout, TimeUnit.MILLISECONDS));
+            flowObjectiveService.forward(deviceId, objective);
+        }
+
+        /**
+         * Release the slot of an attempt on its callback, unless its timeout already did.
+         * A late callback also takes the timed out attempt off the dead letter list.
+         */
+        private void settle(ScheduledFuture<?> timeout, AtomicBoolean released, FailedObjective timedOut) {
+            cancel(timeout);
+            if (released.compareAndSet(false, true)) {
+                release();
+            } else if (timedOut != null) {
+                undoDeadLetter(timedOut);
+            }
+        }
+
+        private void cancel(ScheduledFuture<?> timeout) {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        private void retry(Request request, ForwardingObjective objective, ObjectiveError error) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+            }
+            if (error == ObjectiveError.UNSUPPORTED) {
+                // the pipeline can not take the objective, e.g. a table is at its hard limit: retrying won't help
+                log.warn("ForwardingObjective {} to {} rejected: {}", objective.id(), deviceId, error);
+                deadLetter(new FailedObjective(deviceId, objective, error,
+                                               request.attempts, System.currentTimeMillis()));
+                return;
+            }
+            if (request.attempts > maxRetries) {
+                log.warn("ForwardingObjective {} to {} failed {} times: {}",
+                         objective.id(), deviceId, request.attempts, error);
+                deadLetter(new FailedObjective(deviceId, objective, error,
+                                               request.attempts, System.currentTimeMillis()));
+                return;
+            }
+            long delay = backoff(request.attempts);
+            log.debug("ForwardingObjective {} to {} failed: {}, retry in {} ms",
+                      objective.id(), deviceId, error, delay);
+            retryExecutor.schedule(() -> offer(request), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.TrafficSelector;
+import org.onosproject.net.flow.criteria.IPCriterion;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Mask shape of a selector: the match fields, and prefix lengths of IP fields.
+ * Rules of different shapes in one table split the OVS datapath megaflows,
+ * so the number of shapes per table is a measure of datapath cache efficiency.
+ * Uses the same notation as the megaflow layout of OVSPipeline.
+ */
+final class MaskShape {
+
+    private MaskShape() {
+    }
+
+    /**
+     * Describe the mask shape of a selector.
+     * @param selector : Match fields.
+     * @return : sorted, comma separated fields, such as "ETH_TYPE,IPV4_SRC/24".
+     */
+    static String of(TrafficSelector selector) {
+        return selector.criteria().stream()
+                .map(criterion -> criterion instanceof IPCriterion ?
+                        criterion.type() + "/" + ((IPCriterion) criterion).ip().prefixLength() :
+                        criterion.type().toString())
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Count the rules of every mask shape, per table.
+     * @param entries : Flow entries of one device.
+     * @return : rule count per mask shape, per table ID.
+     */
+    static Map<Integer, Map<String, Integer>> byTable(Iterable<FlowEntry> entries) {
+        Map<Integer, Map<String, Integer>> tables = new TreeMap<>();
+        for (FlowEntry entry : entries) {
+            tables.computeIfAbsent(entry.tableId(), k -> new TreeMap<>())
+                    .merge(of(entry.selector()), 1, Integer::sum);
+        }
+        return tables;
+    }
+}
@@ -18,15 +18,23 @@ package org.onosproject.ovsmanage.impl;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
 import org.onlab.packet.EthType;
 import org.onlab.packet.IpPrefix;
 import org.onlab.packet.MacAddress;
-import org.onlab.util.KryoNamespace;
+import org.onlab.packet.VlanId;
+import org.onlab.util.ItemNotFoundException;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
+import org.onosproject.mastership.MastershipEvent;
+import org.onosproject.mastership.MastershipListener;
+import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.behaviour.BridgeConfig;
@@ -39,26 +47,70 @@ import org.onosproject.net.driver.DriverHandler;
 import org.onosproject.net.driver.DriverService;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowRuleEvent;
+import org.onosproject.net.flow.FlowRuleListener;
+import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
+import org.onosproject.net.flow.criteria.Criteria;
+import org.onosproject.net.flow.criteria.Criterion;
+import org.onosproject.net.flowobjective.DefaultFilteringObjective;
 import org.onosproject.net.flowobjective.DefaultForwardingObjective;
+import org.onosproject.net.flowobjective.FilteringObjective;
 import org.onosproject.net.flowobjective.FlowObjectiveService;
 import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.Objective;
+import org.onosproject.net.flowobjective.ObjectiveContext;
+import org.onosproject.net.flowobjective.ObjectiveError;
+import org.onosproject.net.meter.MeterId;
+import org.onosproject.net.meter.MeterService;
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+import org.onosproject.ovsmanage.intf.FailedObjective;
+import org.onosproject.ovsmanage.intf.LatencySummary;
 import org.onosproject.ovsmanage.intf.OvsManageService;
-import org.onosproject.store.serializers.KryoNamespaces;
 import org.onosproject.store.service.AtomicCounter;
-import org.onosproject.store.service.DistributedSet;
+import org.onosproject.store.service.ConsistentMap;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.MapEventListener;
 import org.onosproject.store.service.Serializer;
 import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.Versioned;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static org.onlab.util.Tools.groupedThreads;
+
 /**
  * OVS Switch Manage Manager.
  */
@@ -77,57 +129,145 @@ public class OvsManageManager implements OvsManageService {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     private FlowObjectiveService flowObjectiveService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    private FlowRuleService flowRuleService;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     private CoreService coreService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     private StorageService storageService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    private ComponentConfigService cfgService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    private MeterService meterService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    private MastershipService mastershipService;
+
+    private static final int DEFAULT_EVENT_QUIET_PERIOD = 1000;
+    @Property(name = "eventQuietPeriod", intValue = DEFAULT_EVENT_QUIET_PERIOD,
+            label = "Milliseconds a bridge must stay quiet before its device events are acted on")
+    private int eventQuietPeriod = DEFAULT_EVENT_QUIET_PERIOD;
+
+    private static final int DEFAULT_OBJECTIVE_WINDOW_SIZE = 16;
+    @Property(name = "objectiveWindowSize", intValue = DEFAULT_OBJECTIVE_WINDOW_SIZE,
+            label = "Maximum ForwardingObjectives in flight per bridge")
+    private int objectiveWindowSize = DEFAULT_OBJECTIVE_WINDOW_SIZE;
+
+    private static final int DEFAULT_OBJECTIVE_MAX_RETRIES = 5;
+    @Property(name = "objectiveMaxRetries", intValue = DEFAULT_OBJECTIVE_MAX_RETRIES,
+            label = "Retries of a failed ForwardingObjective before it is dead-lettered")
+    private int objectiveMaxRetries = DEFAULT_OBJECTIVE_MAX_RETRIES;
+
+    private static final int DEFAULT_OBJECTIVE_RETRY_BACKOFF = 200;
+    @Property(name = "objectiveRetryBackoff", intValue = DEFAULT_OBJECTIVE_RETRY_BACKOFF,
+            label = "Backoff in milliseconds before the first retry, doubled on every retry")
+    private int objectiveRetryBackoff = DEFAULT_OBJECTIVE_RETRY_BACKOFF;
+
+    private static final int DEFAULT_OBJECTIVE_TIMEOUT = 10000;
+    @Property(name = "objectiveTimeout", intValue = DEFAULT_OBJECTIVE_TIMEOUT,
+            label = "Milliseconds a ForwardingObjective may hold its window slot waiting for its callback")
+    private int objectiveTimeout = DEFAULT_OBJECTIVE_TIMEOUT;
+
+    private static final int DEFAULT_NAME_CACHE_SIZE = 65536;
+    @Property(name = "nameCacheSize", intValue = DEFAULT_NAME_CACHE_SIZE,
+            label = "Counters of the local bridge name filter, about 10 per expected bridge")
+    private int nameCacheSize = DEFAULT_NAME_CACHE_SIZE;
+
+    @Property(name = "coreMeterRate", intValue = 0,
+            label = "Rate limit in kbps of the traffic forwarded by each CORE bridge, 0 for no limit")
+    private int coreMeterRate = 0;
+
+    @Property(name = "accessMeterRate", intValue = 0,
+            label = "Rate limit in kbps of the traffic forwarded by each ACCESS bridge, 0 for no limit")
+    private int accessMeterRate = 0;
+
+    private static final int DEFAULT_METER_BURST_SIZE = 512;
+    @Property(name = "meterBurstSize", intValue = DEFAULT_METER_BURST_SIZE,
+            label = "Burst size in kb of the rate limit meters")
+    private int meterBurstSize = DEFAULT_METER_BURST_SIZE;
+
+    @Property(name = "prefixMeterRates", value = "",
+            label = "Rate limits in kbps per IPv4 prefix, overriding the bridge type, e.g. 10.0.0.0/24=1000,...")
+    private String prefixMeterRates = "";
 
     private static final int BOTH_TABLE_PRIORITY = 60000;
     private static final int ONE_TABLE_PRIORITY = 65535;
 
-    private static final int ACCESS_DEVICEID_CARDINALITY = 0;
-    private static final int CORE_DEVICEID_CARDINALITY = 100000000;
+    private static final String PIPELINE_APP_NAME = "org.onosproject.driver.OVSPipeline";
+    // OVSPipeline drops the traffic its FilteringObjectives do not admit when this driver property is true
+    private static final String INGRESS_FILTER_PROPERTY = "ovsPipelineIngressFilter";
+    // table limits are enforced by OVSPipeline, and only reported here
+    private static final String TABLE_SOFT_LIMIT_PROPERTY = "ovsPipelineTableSoftLimit";
+    private static final String TABLE_HARD_LIMIT_PROPERTY = "ovsPipelineTableHardLimit";
+    private static final int ADMIT_PRIORITY = 60000;
+    // how OVSPipeline lays out its stages, to find the table of an objective
+    private static final String LAYOUT_PROPERTY = "ovsPipelineLayout";
+    private static final String MEGAFLOW_LAYOUT = "megaflow";
+    private static final int MEGAFLOW_BLOCK_SIZE = 16;
+    private static final int L3FWD_STAGE = 0;
+    private static final int MAC_STAGE = 1;
 
 
     private InnerDeviceListener innerDeviceListener;
+    private InnerFlowRuleListener innerFlowRuleListener;
     private ApplicationId applicationId;
 
     private AtomicCounter brCoreNumber;
     private AtomicCounter brAccessNumber;
 
-    private DistributedSet<String> brNameSet;
+    private ConsistentMap<String, BridgeRecord> bridgeRegistry;
+    private BridgeNameNearCache nameCache;
+    private final ConcurrentMap<DeviceId, Object> ovsdbLocks = new ConcurrentHashMap<>();
+    // bridges in the legacy datapath ID layout the registry holds as created by OVS Manager
+    private final ConcurrentMap<DeviceId, OvsDeviceType> legacyBridges = new ConcurrentHashMap<>();
+
+
+    private volatile DeviceId controllerId;
+
+    private volatile ManagerState state = ManagerState.INITIALIZING;
 
+    private ExecutorService inventoryExecutor;
+    private ScheduledExecutorService deviceEventExecutor;
+    private DeviceEventCoalescer deviceEventCoalescer;
+    private ScheduledExecutorService objectiveRetryExecutor;
+    private ForwardingObjectiveWindow forwardingObjectiveWindow;
+    private final BridgeReadinessTracker readinessTracker = new BridgeReadinessTracker();
 
-    private DeviceId controllerId;
+    private BridgeMeterPolicies meterPolicies;
+    // only touched on deviceEventExecutor
+    private final Map<DeviceId, List<MeteredForward>> meteredForwards = new HashMap<>();
+    private final InnerRegistryListener registryListener = new InnerRegistryListener();
+    private final InnerMastershipListener mastershipListener = new InnerMastershipListener();
+
+    private final TableOccupancy tableOccupancy = new TableOccupancy();
 
 
     /**
      * Activate.
      */
     @Activate
-    protected void activate() {
+    protected void activate(ComponentContext context) {
         log.info("Started");
 
-        applicationId = coreService.registerApplication("org.onosproject.ovsmanager");
+        cfgService.registerProperties(getClass());
 
+        applicationId = coreService.registerApplication("org.onosproject.ovsmanager");
 
-        Serializer serializer = Serializer.using(
-                new KryoNamespace
-                        .Builder()
-                        .register(KryoNamespaces.API)
-                        .register(String.class)
-                        .build());
 
-        brNameSet = storageService
-                .<String>setBuilder()
-                .withSerializer(serializer)
-                .withName("OVS Manager Bridge Name Set")
+        bridgeRegistry = storageService
+                .<String, BridgeRecord>consistentMapBuilder()
+                .withSerializer(Serializer.using(BridgeRecordSerializer.namespace()))
+                .withName("OVS Manager Bridge Registry")
                 .withApplicationId(applicationId)
-                .build()
-                .asDistributedSet();
+                .build();
+
+        // filled by the first reconciliation, kept coherent by registry events
+        nameCache = new BridgeNameNearCache(nameCacheSize);
+        bridgeRegistry.addListener(nameCache);
 
         brCoreNumber = storageService
                 .atomicCounterBuilder()
@@ -145,33 +285,439 @@ public class OvsManageManager implements OvsManageService {
 
 
 
+        inventoryExecutor = Executors.newSingleThreadExecutor(
+                groupedThreads("onos/ovsmanager", "inventory-%d"));
+
+        deviceEventExecutor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("onos/ovsmanager", "device-event-%d"));
+
+        objectiveRetryExecutor = Executors.newSingleThreadScheduledExecutor(
+                groupedThreads("onos/ovsmanager", "objective-retry-%d"));
+        forwardingObjectiveWindow = new ForwardingObjectiveWindow(flowObjectiveService, objectiveRetryExecutor,
+                                                                  readinessTracker::objectiveConfirmed);
+
+        meterPolicies = new BridgeMeterPolicies(meterService, applicationId);
+
         innerDeviceListener = new InnerDeviceListener();
+        deviceEventCoalescer = new DeviceEventCoalescer(deviceEventExecutor, eventQuietPeriod,
+                                                        innerDeviceListener::dealSwitch,
+                                                        innerDeviceListener::dropSwitch);
+        bridgeRegistry.addListener(registryListener);
+        modified(context);
         deviceService.addListener(innerDeviceListener);
+        mastershipService.addListener(mastershipListener);
 
-        Iterator deviceIter = deviceService.getDevices().iterator();
-        while (deviceIter.hasNext()) {
-            Device device = ((Device) deviceIter.next());
-            if (device.type() == Device.Type.CONTROLLER) {
-                controllerId = device.id();
+        innerFlowRuleListener = new InnerFlowRuleListener();
+        flowRuleService.addListener(innerFlowRuleListener);
+        inventoryExecutor.execute(() -> {
+            for (Device device : deviceService.getDevices(Device.Type.SWITCH)) {
+                tableOccupancy.seed(device.id(), flowRuleService.getFlowEntries(device.id()));
             }
+        });
+        inventoryExecutor.execute(this::locateController);
+    }
+
+    /**
+     * Apply component configuration.
+     * @param context : Component context.
+     */
+    @Modified
+    protected void modified(ComponentContext context) {
+        if (context == null) {
+            return;
         }
-        if (controllerId == null) {
-            log.info("controllerId not ready now !!!");
+        Dictionary<?, ?> properties = context.getProperties();
+        eventQuietPeriod = getIntProperty(properties, "eventQuietPeriod", DEFAULT_EVENT_QUIET_PERIOD);
+        deviceEventCoalescer.setQuietPeriod(eventQuietPeriod);
+
+        objectiveWindowSize = getIntProperty(properties, "objectiveWindowSize", DEFAULT_OBJECTIVE_WINDOW_SIZE);
+        objectiveMaxRetries = getIntProperty(properties, "objectiveMaxRetries", DEFAULT_OBJECTIVE_MAX_RETRIES);
+        objectiveRetryBackoff = getIntProperty(properties, "objectiveRetryBackoff",
+                                               DEFAULT_OBJECTIVE_RETRY_BACKOFF);
+        objectiveTimeout = getIntProperty(properties, "objectiveTimeout", DEFAULT_OBJECTIVE_TIMEOUT);
+        forwardingObjectiveWindow.configure(objectiveWindowSize, objectiveMaxRetries, objectiveRetryBackoff,
+                                            objectiveTimeout);
+
+        int newNameCacheSize = getIntProperty(properties, "nameCacheSize", DEFAULT_NAME_CACHE_SIZE);
+        if (newNameCacheSize != nameCacheSize) {
+            nameCacheSize = newNameCacheSize;
+            inventoryExecutor.execute(() -> nameCache.rebuild(bridgeRegistry::keySet, nameCacheSize));
+        }
+
+        coreMeterRate = getIntProperty(properties, "coreMeterRate", 0);
+        accessMeterRate = getIntProperty(properties, "accessMeterRate", 0);
+        meterBurstSize = getIntProperty(properties, "meterBurstSize", DEFAULT_METER_BURST_SIZE);
+        String newPrefixMeterRates = Tools.get(properties, "prefixMeterRates");
+        prefixMeterRates = newPrefixMeterRates == null ? "" : newPrefixMeterRates.trim();
+        Map<OvsDeviceType, Long> typeRates = new HashMap<>();
+        typeRates.put(OvsDeviceType.CORE, (long) coreMeterRate);
+        typeRates.put(OvsDeviceType.ACCESS, (long) accessMeterRate);
+        Set<String> changedProfiles = meterPolicies.configure(typeRates, parsePrefixRates(prefixMeterRates),
+                                                              meterBurstSize);
+        if (!changedProfiles.isEmpty()) {
+            deviceEventExecutor.execute(() -> reapplyMeters(changedProfiles));
+        }
+
+        log.info("Configured. Event quiet period {} ms, objective window {}, max retries {}, backoff {} ms, " +
+                         "timeout {} ms, name cache size {}, meter rates core {} access {} prefixes [{}] kbps " +
+                         "burst {} kb",
+                 eventQuietPeriod, objectiveWindowSize, objectiveMaxRetries, objectiveRetryBackoff, objectiveTimeout,
+                 nameCacheSize, coreMeterRate, accessMeterRate, prefixMeterRates, meterBurstSize);
+    }
+
+    private Map<IpPrefix, Long> parsePrefixRates(String value) {
+        Map<IpPrefix, Long> rates = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] pair = entry.split("=");
+            try {
+                IpPrefix prefix = IpPrefix.valueOf(pair[0].trim());
+                if (pair.length != 2 || !prefix.isIp4()) {
+                    throw new IllegalArgumentException(entry);
+                }
+                rates.put(prefix, Long.parseLong(pair[1].trim()));
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid prefixMeterRates entry {}, ignored", entry);
+            }
+        }
+        return rates;
+    }
+
+    private int getIntProperty(Dictionary<?, ?> properties, String name, int defaultValue) {
+        String value = Tools.get(properties, name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid {} value {}, using {}", name, value, defaultValue);
+            return defaultValue;
         }
     }
 
     /**
      * Deactivate.
+     * The bridge registry and counters are kept, they are reconciled against OVSDB on next activation.
      */
     @Deactivate
     protected void deactivate() {
+        cfgService.unregisterProperties(getClass(), false);
+        bridgeRegistry.removeListener(nameCache);
+        bridgeRegistry.removeListener(registryListener);
         deviceService.removeListener(innerDeviceListener);
-        brNameSet.clear();
-        brCoreNumber.set(0);
-        brAccessNumber.set(0);
+        mastershipService.removeListener(mastershipListener);
+        flowRuleService.removeListener(innerFlowRuleListener);
+        inventoryExecutor.shutdownNow();
+        deviceEventExecutor.shutdownNow();
+        objectiveRetryExecutor.shutdownNow();
+        state = ManagerState.INITIALIZING;
         log.info("Stopped");
     }
 
+    @Override
+    public ManagerState getState() {
+        return state;
+    }
+
+    @Override
+    public long getSuppressedEventCount() {
+        return deviceEventCoalescer.suppressedCount();
+    }
+
+    @Override
+    public long getNameLookupCount() {
+        return nameCache.lookups();
+    }
+
+    @Override
+    public long getLocalNameLookupCount() {
+        return nameCache.localAnswers();
+    }
+
+    @Override
+    public List<FailedObjective> getFailedObjectives() {
+        return forwardingObjectiveWindow.deadLetters();
+    }
+
+    @Override
+    public void clearFailedObjectives() {
+        forwardingObjectiveWindow.clearDeadLetters();
+    }
+
+    @Override
+    public Map<BridgeStage, Map<OvsDeviceType, LatencySummary>> getReadinessLatencies() {
+        return readinessTracker.summaries();
+    }
+
+    @Override
+    public boolean waitUntilReady(String deviceName, long timeoutMillis) {
+        Versioned<BridgeRecord> record = bridgeRegistry.get(deviceName);
+        if (record == null) {
+            return false;
+        }
+        DeviceId deviceId = toDeviceId(record.value().datapathId());
+        CompletableFuture<Boolean> ready = readinessTracker.readyFuture(deviceId);
+        if (ready == null) {
+            // not created recently, or already confirmed
+            return deviceService.isAvailable(deviceId);
+        }
+        try {
+            return ready.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Map<Integer, Map<String, Integer>> getTableMaskShapes(String deviceName) {
+        Versioned<BridgeRecord> record = bridgeRegistry.get(deviceName);
+        if (record == null) {
+            return Collections.emptyMap();
+        }
+        return MaskShape.byTable(flowRuleService.getFlowEntries(toDeviceId(record.value().datapathId())));
+    }
+
+    @Override
+    public Map<String, Map<Integer, Integer>> getTableOccupancy() {
+        Map<String, Map<Integer, Integer>> occupancy = new TreeMap<>();
+        bridgeRegistry.values().forEach(record -> occupancy.put(
+                record.value().name(), tableOccupancy.counts(toDeviceId(record.value().datapathId()))));
+        return occupancy;
+    }
+
+    @Override
+    public int getTableSoftLimit(String deviceName) {
+        return tableLimit(deviceName, TABLE_SOFT_LIMIT_PROPERTY);
+    }
+
+    @Override
+    public int getTableHardLimit(String deviceName) {
+        return tableLimit(deviceName, TABLE_HARD_LIMIT_PROPERTY);
+    }
+
+    private int tableLimit(String deviceName, String property) {
+        Versioned<BridgeRecord> record = bridgeRegistry == null ? null : bridgeRegistry.get(deviceName);
+        return record == null ? 0 : tableLimit(toDeviceId(record.value().datapathId()), property);
+    }
+
+    /**
+     * Read a table limit of a switch, as enforced by its pipeline driver.
+     * @param deviceId : The DeviceId of the switch.
+     * @param property : Driver property of the limit.
+     * @return : the limit, 0 if disabled or not configured.
+     */
+    private int tableLimit(DeviceId deviceId, String property) {
+        String value = driverProperty(deviceId, property);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Count the rules of the table OVSPipeline puts a ForwardingObjective in.
+     * With the megaflow layout the table depends on the placements of the pipeliner,
+     * the fullest table of the stage block is counted instead.
+     * @param deviceId : The DeviceId of the switch.
+     * @param selector : Match fields of the objective.
+     * @return : the rule count.
+     */
+    private int targetTableCount(DeviceId deviceId, TrafficSelector selector) {
+        boolean l3 = selector.getCriterion(Criterion.Type.IPV4_SRC) != null
+                || selector.getCriterion(Criterion.Type.IPV4_DST) != null;
+        boolean mac = selector.getCriterion(Criterion.Type.ETH_SRC) != null
+                || selector.getCriterion(Criterion.Type.ETH_DST) != null;
+        int stage = !l3 && mac ? MAC_STAGE : L3FWD_STAGE;
+        boolean megaflow = MEGAFLOW_LAYOUT.equals(driverProperty(deviceId, LAYOUT_PROPERTY));
+        int first = megaflow ? stage * MEGAFLOW_BLOCK_SIZE : stage;
+        if (Boolean.parseBoolean(driverProperty(deviceId, INGRESS_FILTER_PROPERTY))) {
+            first++;
+        }
+        int last = megaflow ? first + MEGAFLOW_BLOCK_SIZE - 1 : first;
+
+        int count = 0;
+        for (Map.Entry<Integer, Integer> entry : tableOccupancy.counts(deviceId).entrySet()) {
+            if (entry.getKey() >= first && entry.getKey() <= last) {
+                count = Math.max(count, entry.getValue());
+            }
+        }
+        return count;
+    }
+
+    private static DeviceId toDeviceId(long datapathId) {
+        return DeviceId.deviceId("of:" + DatapathIdCodec.toDatapathIdString(datapathId));
+    }
+
+    /**
+     * Choose the OVSDB connection new bridges are created on: the first one found while it is available,
+     * else any available one.
+     * @return : the OVSDB node.
+     */
+    private DeviceId selectOvsdbNode() {
+        if (deviceService.isAvailable(controllerId)) {
+            return controllerId;
+        }
+        for (Device device : deviceService.getAvailableDevices(Device.Type.CONTROLLER)) {
+            return device.id();
+        }
+        return controllerId;
+    }
+
+    /**
+     * Get the OVSDB connection holding a bridge.
+     * @param record : the bridge.
+     * @return : its OVSDB node, or the first OVSDB connection for records written without it.
+     */
+    private DeviceId ovsdbNodeOf(BridgeRecord record) {
+        return record.ovsdbNode() == null ? controllerId : DeviceId.deviceId(record.ovsdbNode());
+    }
+
+    /**
+     * Find the OVSDB connections among known devices, then reconcile the bridge inventory of each.
+     * Runs on the inventory executor.
+     */
+    private void locateController() {
+        for (Device device : deviceService.getDevices(Device.Type.CONTROLLER)) {
+            if (controllerId == null) {
+                controllerId = device.id();
+            }
+            reconcileInventory(device.id());
+        }
+        if (controllerId == null) {
+            state = ManagerState.WAITING_FOR_CONTROLLER;
+            log.info("controllerId not ready now !!!");
+        }
+    }
+
+    /**
+     * Make the bridge registry and the counters agree with the bridges one OVSDB node actually has.
+     * Only the records of that node are removed when their bridge is gone, other nodes are untouched.
+     * Runs on the inventory executor.
+     * @param ovsdbId : The OVSDB connection to read the bridges from.
+     */
+    private void reconcileInventory(DeviceId ovsdbId) {
+        if (state != ManagerState.READY) {
+            state = ManagerState.RECONCILING;
+        }
+
+        String node = ovsdbId.toString();
+        int reconciled;
+        // local creates and deletes on this node wait for the snapshot to be applied
+        synchronized (ovsdbLock(ovsdbId)) {
+            // records written after this point, e.g. by another cluster member, are newer than the snapshot
+            Map<String, Long> known = bridgeRegistry.entrySet().stream()
+                    .filter(entry -> node.equals(entry.getValue().value().ovsdbNode()))
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().version()));
+
+            Collection<BridgeDescription> bridges;
+            try {
+                bridges = driverService.createHandler(ovsdbId).behaviour(BridgeConfig.class).getBridges();
+            } catch (Exception e) {
+                log.warn("Failed to fetch bridges from {}, waiting for OVSDB to reconnect", ovsdbId, e);
+                if (state != ManagerState.READY) {
+                    state = ManagerState.WAITING_FOR_CONTROLLER;
+                }
+                return;
+            }
+
+            Set<String> ovsdbNames = bridges.stream()
+                    .map(bridge -> bridge.bridgeName().name())
+                    .collect(Collectors.toSet());
+            bridges.forEach(bridge -> {
+                long datapathId = DatapathIdCodec.parse(bridge.deviceId());
+                Versioned<BridgeRecord> existing = bridgeRegistry.get(bridge.bridgeName().name());
+                OvsDeviceType type = DatapathIdCodec.typeOf(datapathId);
+                if (type == null && existing != null && existing.value().datapathId() == datapathId) {
+                    // a legacy bridge is ours only if the registry already says so
+                    type = existing.value().type();
+                }
+                BridgeRecord record = new BridgeRecord(bridge.bridgeName().name(), type, datapathId, node);
+                trackLegacyBridge(record);
+                if (existing == null || !existing.value().equals(record)) {
+                    bridgeRegistry.put(record.name(), record);
+                }
+                advanceCounter(bridge.deviceId());
+            });
+            known.forEach((name, version) -> {
+                if (!ovsdbNames.contains(name)) {
+                    // a no-op when the record changed since the snapshot
+                    bridgeRegistry.remove(name, version);
+                }
+            });
+            reconciled = ovsdbNames.size();
+        }
+        nameCache.rebuild(bridgeRegistry::keySet, nameCacheSize);
+
+        state = ManagerState.READY;
+        log.info("Bridge inventory reconciled, {} bridges on {}", reconciled, ovsdbId);
+    }
+
+    /**
+     * Remember a registered bridge in the legacy datapath ID layout, so that it is provisioned like the others.
+     * Provisions it right away when its switch connected before the registry said it was ours.
+     * @param record : a bridge record.
+     */
+    private void trackLegacyBridge(BridgeRecord record) {
+        if (record.type() == null || DatapathIdCodec.typeOf(record.datapathId()) != null
+                || DatapathIdCodec.legacyTypeOf(record.datapathId()) == null) {
+            return;
+        }
+        DeviceId deviceId = toDeviceId(record.datapathId());
+        if (legacyBridges.put(deviceId, record.type()) == null && deviceService.isAvailable(deviceId)) {
+            deviceEventExecutor.execute(() -> innerDeviceListener.dealSwitch(deviceId));
+        }
+    }
+
+    /**
+     * Get the Switch type of a bridge created by OVS Manager.
+     * @param deviceId : The DeviceId of the bridge.
+     * @return : the Switch type, or null if the bridge was not created by OVS Manager.
+     */
+    private OvsDeviceType ownedType(DeviceId deviceId) {
+        OvsDeviceType type = DatapathIdCodec.typeOf(DatapathIdCodec.parse(deviceId));
+        return type != null ? type : legacyBridges.get(deviceId);
+    }
+
+    /**
+     * Get the lock serializing the bridge changes of one OVSDB node with its reconciliation.
+     * @param ovsdbId : The OVSDB connection.
+     * @return : the lock of that node.
+     */
+    private Object ovsdbLock(DeviceId ovsdbId) {
+        return ovsdbLocks.computeIfAbsent(ovsdbId, id -> new Object());
+    }
+
+    /**
+     * Keep the accumulated counters ahead of the datapath ID of an existing bridge.
+     * @param deviceId : The DeviceId of an existing bridge.
+     */
+    private void advanceCounter(DeviceId deviceId) {
+        long datapathId = DatapathIdCodec.parse(deviceId);
+        OvsDeviceType type = DatapathIdCodec.typeOf(datapathId);
+        if (type == null) {
+            // legacy and foreign datapath IDs have type bits 0, new ones can never collide with them
+            return;
+        }
+
+        AtomicCounter counter = type == OvsDeviceType.CORE ? brCoreNumber : brAccessNumber;
+        long sequence = DatapathIdCodec.sequenceOf(datapathId);
+
+        long current = counter.get();
+        while (current < sequence && !counter.compareAndSet(current, sequence)) {
+            current = counter.get();
+        }
+    }
+
     /**
      * Create an OVS switch.
      * @param deviceName : Switch name.
@@ -180,46 +726,163 @@ public class OvsManageManager implements OvsManageService {
      */
     @Override
     public boolean createOvs(String deviceName, OvsDeviceType deviceType) {
-        if (controllerId == null) {
-            log.info("controllerId not ready!!!");
+        if (state != ManagerState.READY) {
+            log.info("OVS Manager not ready: {}", state);
             return false;
         }
 
-        if (brNameSet == null) {
-            log.info("Bridge name set not ready!!!");
+        if (bridgeRegistry == null) {
+            log.info("Bridge registry not ready!!!");
             return false;
         }
 
-        if (brNameSet.contains(deviceName)) {
+        if (nameCache.mightContain(deviceName) && bridgeRegistry.containsKey(deviceName)) {
             log.info("Bridge name existed");
             return false;
-        } else {
-            brNameSet.add(deviceName);
         }
 
-        String deviceId;
+        long datapathId;
         switch (deviceType) {
             case CORE:
-                deviceId = String.format("%16d", brCoreNumber.incrementAndGet()
-                        + CORE_DEVICEID_CARDINALITY).replaceAll(" ", "0");
+                datapathId = DatapathIdCodec.encode(deviceType, brCoreNumber.incrementAndGet());
                 break;
             case ACCESS:
-                deviceId = String.format("%16d", brAccessNumber.incrementAndGet()
-                        + ACCESS_DEVICEID_CARDINALITY).replaceAll(" ", "0");
+                datapathId = DatapathIdCodec.encode(deviceType, brAccessNumber.incrementAndGet());
                 break;
             default:
                 log.info("OvsDeviceType error");
                 return false;
         }
 
+        DeviceId ovsdbId = selectOvsdbNode();
+        return addBridge(new BridgeRecord(deviceName, deviceType, datapathId, ovsdbId.toString()), ovsdbId);
+    }
 
-        DriverHandler handler = driverService.createHandler(controllerId);
-        BridgeConfig bridgeConfig = handler.behaviour(BridgeConfig.class);
-        bridgeConfig.addBridge(BridgeName.bridgeName(deviceName), deviceId, (String) null);
+    /**
+     * Register a bridge and create it through OVSDB.
+     * @param record : the bridge, with its datapath ID.
+     * @param ovsdbId : The OVSDB connection to create the bridge on.
+     * @return : if the name was free and the bridge was requested.
+     */
+    private boolean addBridge(BridgeRecord record, DeviceId ovsdbId) {
+        synchronized (ovsdbLock(ovsdbId)) {
+            nameCache.localInsert(record.name());
+            if (bridgeRegistry.putIfAbsent(record.name(), record) != null) {
+                nameCache.abortLocalInsert(record.name());
+                log.info("Bridge name existed");
+                return false;
+            }
+            DeviceId deviceId = toDeviceId(record.datapathId());
+            readinessTracker.requested(deviceId, record.type());
+
+
+            DriverHandler handler = driverService.createHandler(ovsdbId);
+            BridgeConfig bridgeConfig = handler.behaviour(BridgeConfig.class);
+            bridgeConfig.addBridge(BridgeName.bridgeName(record.name()),
+                                   DatapathIdCodec.toDatapathIdString(record.datapathId()), (String) null);
+            readinessTracker.reached(deviceId, BridgeStage.OVSDB_ACKNOWLEDGED);
+        }
 
         return true;
     }
 
+    @Override
+    public int exportBridges(String file) throws IOException {
+        int count = BridgeInventoryFile.write(Paths.get(file),
+                                              () -> bridgeRegistry.values().stream()
+                                                      .map(Versioned::value)
+                                                      .iterator());
+        log.info("Exported {} bridges to {}", count, file);
+        return count;
+    }
+
+    @Override
+    public int restoreBridges(String file, int parallelism) throws IOException {
+        if (state != ManagerState.READY) {
+            log.info("OVS Manager not ready: {}", state);
+            return 0;
+        }
+
+        Path snapshot = Paths.get(file);
+        Path checkpoint = snapshot.resolveSibling(snapshot.getFileName() + ".checkpoint");
+        Set<String> done = new HashSet<>();
+        if (Files.exists(checkpoint)) {
+            done.addAll(Files.readAllLines(checkpoint, StandardCharsets.UTF_8));
+        }
+        if (!done.isEmpty()) {
+            log.info("Resuming restore of {}, {} bridges already done", file, done.size());
+        }
+
+        ExecutorService restoreExecutor = Executors.newFixedThreadPool(
+                Math.max(1, parallelism), groupedThreads("onos/ovsmanager", "restore-%d"));
+        AtomicInteger restored = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        try (BufferedWriter checkpointWriter = Files.newBufferedWriter(
+                checkpoint, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            BridgeInventoryFile.read(snapshot, record -> {
+                if (done.contains(record.name())) {
+                    return;
+                }
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    if (restoreBridge(record)) {
+                        restored.incrementAndGet();
+                        synchronized (checkpointWriter) {
+                            try {
+                                checkpointWriter.write(record.name());
+                                checkpointWriter.newLine();
+                                checkpointWriter.flush();
+                            } catch (IOException e) {
+                                log.warn("Failed to checkpoint {}", record.name(), e);
+                            }
+                        }
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }, restoreExecutor));
+            });
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()])).join();
+        } finally {
+            restoreExecutor.shutdownNow();
+        }
+
+        if (failed.get() == 0) {
+            Files.deleteIfExists(checkpoint);
+        }
+        log.info("Restored {} bridges from {}, {} failed", restored.get(), file, failed.get());
+        return restored.get();
+    }
+
+    /**
+     * Re-create one bridge of a snapshot with its original datapath ID.
+     * @param record : the bridge.
+     * @return : if the bridge exists with that datapath ID afterwards.
+     */
+    private boolean restoreBridge(BridgeRecord record) {
+        Versioned<BridgeRecord> existing = bridgeRegistry.get(record.name());
+        if (existing != null) {
+            if (existing.value().datapathId() != record.datapathId()) {
+                log.warn("Bridge {} exists with another datapath ID, not restored", record.name());
+                return false;
+            }
+            return true;
+        }
+
+        DeviceId ovsdbId = selectOvsdbNode();
+        if (record.ovsdbNode() != null && deviceService.getDevice(DeviceId.deviceId(record.ovsdbNode())) != null) {
+            ovsdbId = DeviceId.deviceId(record.ovsdbNode());
+        }
+        try {
+            advanceCounter(toDeviceId(record.datapathId()));
+            return addBridge(new BridgeRecord(record.name(), record.type(), record.datapathId(),
+                                              ovsdbId.toString()), ovsdbId);
+        } catch (Exception e) {
+            log.warn("Failed to restore bridge {}", record.name(), e);
+            bridgeRegistry.remove(record.name());
+            return false;
+        }
+    }
+
     /**
      * Get a List of the BridgeDescription of OVS switches connecting to ONOS.
      * @param type : Switch type, use enum OvsDeviceType below.
@@ -245,30 +908,18 @@ public class OvsManageManager implements OvsManageService {
         if (type == null) {
             return devices.stream().collect(Collectors.toList());
         } else {
-            if (type == OvsDeviceType.CORE) {
-                return devices.stream()
-                        .filter(device -> {
-                            String datapathId = device.deviceId().toString().split(":")[1];
-                            if (Integer.valueOf(datapathId) > CORE_DEVICEID_CARDINALITY) {
-                                return true;
-                            }
-                            return false;
-                        })
-                        .collect(Collectors.toList());
-            } else if (type == OvsDeviceType.ACCESS) {
-                return devices.stream()
-                        .filter(device -> {
-                            String datapathId = device.deviceId().toString().split(":")[1];
-                            if (Integer.valueOf(datapathId) < CORE_DEVICEID_CARDINALITY) {
-                                return true;
-                            }
-                            return false;
-                        })
-                        .collect(Collectors.toList());
-            } else {
-                return Collections.emptyList();
-            }
+            return devices.stream()
+                    .filter(device -> ownedType(device.deviceId()) == type)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Set<String> getBridgeNames() {
+        if (bridgeRegistry == null) {
+            return Collections.emptySet();
         }
+        return new HashSet<>(bridgeRegistry.keySet());
     }
 
     /**
@@ -278,70 +929,226 @@ public class OvsManageManager implements OvsManageService {
      */
     @Override
     public boolean deleteOvs(String deviceName) {
-        if (controllerId == null) {
-            log.info("controllerId not ready!!!");
+        if (state != ManagerState.READY) {
+            log.info("OVS Manager not ready: {}", state);
             return false;
         }
 
-        if (brNameSet == null) {
-            log.info("Bridge name set");
+        if (bridgeRegistry == null) {
+            log.info("Bridge registry not ready!!!");
             return false;
         }
 
-        if (!brNameSet.contains(deviceName)) {
+        Versioned<BridgeRecord> existing = nameCache.mightContain(deviceName) ? bridgeRegistry.get(deviceName) : null;
+        if (existing == null) {
             log.info("Bridge not exist");
             return false;
         }
 
-        DriverHandler handler = driverService.createHandler(controllerId);
-        BridgeConfig bridgeConfig = handler.behaviour(BridgeConfig.class);
-        bridgeConfig.deleteBridge(BridgeName.bridgeName(deviceName));
+        if (existing.value().type() == null) {
+            log.info("Bridge {} was not created by OVS Manager, not deleted", deviceName);
+            return false;
+        }
+
+        DeviceId ovsdbId = ovsdbNodeOf(existing.value());
+        synchronized (ovsdbLock(ovsdbId)) {
+            DriverHandler handler = driverService.createHandler(ovsdbId);
+            BridgeConfig bridgeConfig = handler.behaviour(BridgeConfig.class);
+            bridgeConfig.deleteBridge(BridgeName.bridgeName(deviceName));
 
-        brNameSet.remove(deviceName);
+            Versioned<BridgeRecord> removed = bridgeRegistry.remove(deviceName);
+            if (removed != null) {
+                readinessTracker.abandon(toDeviceId(removed.value().datapathId()));
+            }
+        }
 
         return true;
     }
 
+    /**
+     * Move the metered forwards of changed profiles to meters with the current limits.
+     * A forward is re-added with the same selector and priority, so the flow is modified in place and
+     * never missing; the replaced meter is withdrawn once every flow it served points to its successor.
+     * @param changed : Profiles whose limits changed.
+     */
+    private void reapplyMeters(Set<String> changed) {
+        meteredForwards.forEach((deviceId, forwards) -> {
+            Map<String, List<MeteredForward>> moved = new HashMap<>();
+            for (MeteredForward forward : forwards) {
+                String profile = meterPolicies.profileOf(forward.type, forward.selector);
+                if (profile.equals(forward.profile) && !changed.contains(profile)) {
+                    continue;
+                }
+                moved.computeIfAbsent(forward.profile, k -> new ArrayList<>()).add(forward);
+                forward.profile = profile;
+            }
+
+            Map<String, BridgeMeterPolicies.AllocatedMeter> retired = new HashMap<>();
+            for (String profile : changed) {
+                BridgeMeterPolicies.AllocatedMeter old = meterPolicies.retire(deviceId, profile);
+                if (old != null) {
+                    retired.put(profile, old);
+                }
+            }
+
+            moved.forEach((oldProfile, list) -> {
+                BridgeMeterPolicies.AllocatedMeter old = retired.remove(oldProfile);
+                AtomicInteger pending = new AtomicInteger(list.size());
+                Runnable release = old == null ? null : () -> {
+                    if (pending.decrementAndGet() == 0) {
+                        meterPolicies.withdraw(deviceId, old);
+                    }
+                };
+                for (MeteredForward forward : list) {
+                    MeterId meterId = meterPolicies.meterFor(deviceId, forward.profile);
+                    innerDeviceListener.addForward(deviceId, forward.priority, forward.selector,
+                                                   withMeter(forward.treatment, meterId), release);
+                }
+            });
+            retired.forEach((profile, old) -> meterPolicies.withdraw(deviceId, old));
+        });
+    }
+
+    /**
+     * Read a property of the driver of a device.
+     * @param deviceId : The DeviceId.
+     * @param name : Property name.
+     * @return : the value, null if the device has no driver or its driver not the property.
+     */
+    private String driverProperty(DeviceId deviceId, String name) {
+        try {
+            return driverService.getDriver(deviceId).properties().get(name);
+        } catch (ItemNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forget the metered forwards of a removed bridge and withdraw its meters.
+     * Runs on the device event executor.
+     * @param deviceId : The DeviceId of the bridge.
+     */
+    private void releaseMeters(DeviceId deviceId) {
+        meteredForwards.remove(deviceId);
+        meterPolicies.release(deviceId);
+    }
+
+    private static TrafficTreatment withMeter(TrafficTreatment treatment, MeterId meterId) {
+        if (meterId == null) {
+            return treatment;
+        }
+        TrafficTreatment.Builder builder = DefaultTrafficTreatment.builder(treatment);
+        if (treatment.tableTransition() != null) {
+            builder.transition(treatment.tableTransition().tableId());
+        }
+        return builder.meter(meterId).build();
+    }
+
+    /**
+     * A ForwardingObjective subject to a rate limit profile, kept to move it between meters.
+     */
+    private static final class MeteredForward {
+        private final OvsDeviceType type;
+        private final int priority;
+        private final TrafficSelector selector;
+        private final TrafficTreatment treatment;
+        private String profile;
+
+        private MeteredForward(OvsDeviceType type, int priority, TrafficSelector selector,
+                               TrafficTreatment treatment, String profile) {
+            this.type = type;
+            this.priority = priority;
+            this.selector = selector;
+            this.treatment = treatment;
+            this.profile = profile;
+        }
+    }
+
     /**
      * Listener to Device Event and OVSDB connection.
+     * Switch events are coalesced per device, see DeviceEventCoalescer.
      */
     private class InnerDeviceListener implements DeviceListener {
         @Override
         public void event(DeviceEvent event) {
 
-            if (!event.type().equals(DeviceEvent.Type.DEVICE_ADDED)) {
-                return;
-            }
-
             Device device = event.subject();
 
             if (device.type() == Device.Type.CONTROLLER) {
-                dealController(device.id());
-            } else {
-                dealSwitch(device.id());
+                if (event.type().equals(DeviceEvent.Type.DEVICE_ADDED)) {
+                    dealController(device.id());
+                }
+                return;
+            }
+
+            switch (event.type()) {
+                case DEVICE_ADDED:
+                    readinessTracker.reached(device.id(), BridgeStage.OPENFLOW_CONNECTED);
+                    deviceEventCoalescer.submit(device.id(), true);
+                    break;
+                case DEVICE_REMOVED:
+                case DEVICE_SUSPENDED:
+                    deviceEventCoalescer.submit(device.id(), false);
+                    break;
+                case DEVICE_AVAILABILITY_CHANGED:
+                    deviceEventCoalescer.submit(device.id(), deviceService.isAvailable(device.id()));
+                    break;
+                default:
+                    break;
             }
         }
 
         /**
-         * Catch the new OVSDB connection.
+         * Catch a new OVSDB connection and reconcile the bridges it holds.
+         * The first connection is where new bridges are created.
          * @param deviceId : The OVSDB connection ID.
          */
         private void dealController(DeviceId deviceId) {
-            controllerId = deviceId;
-            log.info("controllerId is ready !!!");
+            if (controllerId == null) {
+                controllerId = deviceId;
+                log.info("controllerId is ready !!!");
+            }
+            inventoryExecutor.execute(() -> reconcileInventory(deviceId));
         }
 
         /**
-         * Separate two type of switches.
+         * Separate two type of switches, switches not created by OVS Manager are left alone.
+         * Only the master of a switch sends its ForwardingObjectives and allocates its meters,
+         * the other nodes can not see them confirmed and stop tracking its readiness.
          * @param deviceId : The DeviceId of target device.
          */
         private void dealSwitch(DeviceId deviceId) {
-            String datapathId = deviceId.toString().split(":")[1];
-            if (Integer.valueOf(datapathId) > CORE_DEVICEID_CARDINALITY) {
+            OvsDeviceType type = ownedType(deviceId);
+            if (type == null) {
+                log.debug("{} was not created by OVS Manager, not provisioned", deviceId);
+                return;
+            }
+            if (!mastershipService.isLocalMaster(deviceId)) {
+                log.debug("Not the master of {}, not provisioned here", deviceId);
+                readinessTracker.abandon(deviceId);
+                return;
+            }
+            meteredForwards.remove(deviceId);
+            if (type == OvsDeviceType.CORE) {
                 dealCoreSwitch(deviceId);
             } else {
                 dealAccessSwitch(deviceId);
             }
+            readinessTracker.provisioned(deviceId);
+        }
+
+        /**
+         * Release the state of a switch once its removal settled, a switch back within the quiet period
+         * keeps its state. A switch only unavailable keeps it too, it is provisioned again when back.
+         * @param deviceId : The DeviceId of target device.
+         */
+        private void dropSwitch(DeviceId deviceId) {
+            if (deviceService.getDevice(deviceId) != null) {
+                return;
+            }
+            tableOccupancy.clear(deviceId);
+            forwardingObjectiveWindow.removeDevice(deviceId);
+            releaseMeters(deviceId);
         }
 
         /**
@@ -349,6 +1156,8 @@ public class OvsManageManager implements OvsManageService {
          * @param deviceId : The DeviceId of target device.
          */
         private void dealCoreSwitch(DeviceId deviceId) {
+            addAdmittingFilter(deviceId);
+
             TrafficSelector.Builder trafficSelectorBuilder0 = DefaultTrafficSelector.builder();
             trafficSelectorBuilder0.matchEthType(EthType.EtherType.IPV4.ethType().toShort())
                     .matchIPDst(IpPrefix.valueOf("192.168.1.1/28"))
@@ -357,8 +1166,8 @@ public class OvsManageManager implements OvsManageService {
             TrafficTreatment.Builder trafficTreatmentBuilder0 = DefaultTrafficTreatment.builder();
             trafficTreatmentBuilder0.setEthDst(MacAddress.BROADCAST).transition(1);
 
-            addForward(deviceId, BOTH_TABLE_PRIORITY,
-                       trafficSelectorBuilder0.build(), trafficTreatmentBuilder0.build());
+            addMeteredForward(deviceId, OvsDeviceType.CORE, BOTH_TABLE_PRIORITY,
+                              trafficSelectorBuilder0.build(), trafficTreatmentBuilder0.build());
         }
 
         /**
@@ -366,6 +1175,8 @@ public class OvsManageManager implements OvsManageService {
          * @param deviceId : The DeviceId of target device.
          */
         private void dealAccessSwitch(DeviceId deviceId) {
+            addAdmittingFilter(deviceId);
+
             TrafficSelector.Builder trafficSelectorBuilder0 = DefaultTrafficSelector.builder();
             trafficSelectorBuilder0.matchEthType(EthType.EtherType.IPV4.ethType().toShort())
                     .matchIPSrc(IpPrefix.valueOf("10.0.0.0/24"));
@@ -373,8 +1184,8 @@ public class OvsManageManager implements OvsManageService {
             TrafficTreatment.Builder trafficTreatmentBuilder0 = DefaultTrafficTreatment.builder();
             trafficTreatmentBuilder0.setEthDst(MacAddress.BROADCAST).transition(1);
 
-            addForward(deviceId, BOTH_TABLE_PRIORITY,
-                       trafficSelectorBuilder0.build(), trafficTreatmentBuilder0.build());
+            addMeteredForward(deviceId, OvsDeviceType.ACCESS, BOTH_TABLE_PRIORITY,
+                              trafficSelectorBuilder0.build(), trafficTreatmentBuilder0.build());
 
 
             TrafficSelector.Builder trafficSelectorBuilder1 = DefaultTrafficSelector.builder();
@@ -384,17 +1195,62 @@ public class OvsManageManager implements OvsManageService {
             trafficTreatmentBuilder1.drop();
 
             addForward(deviceId, BOTH_TABLE_PRIORITY,
-                       trafficSelectorBuilder1.build(), trafficTreatmentBuilder1.build());
+                       trafficSelectorBuilder1.build(), trafficTreatmentBuilder1.build(), null);
+        }
+
+        /**
+         * Admit the traffic of the ForwardingObjectives, untagged packets on any port, when the pipeline
+         * of the switch drops what its FilteringObjectives do not admit.
+         * @param deviceId : The DeviceId of target device.
+         */
+        private void addAdmittingFilter(DeviceId deviceId) {
+            if (!Boolean.parseBoolean(driverProperty(deviceId, INGRESS_FILTER_PROPERTY))) {
+                return;
+            }
+            // the VLAN is both the key and the only condition of the filter
+            FilteringObjective filter = DefaultFilteringObjective.builder()
+                    .permit()
+                    .withKey(Criteria.matchVlanId(VlanId.NONE))
+                    .addCondition(Criteria.matchVlanId(VlanId.NONE))
+                    .withPriority(ADMIT_PRIORITY)
+                    .fromApp(applicationId)
+                    .makePermanent()
+                    .add(new ObjectiveContext() {
+                        @Override
+                        public void onError(Objective objective, ObjectiveError error) {
+                            log.warn("Admitting filter of {} failed: {}, its traffic is dropped", deviceId, error);
+                        }
+                    });
+            flowObjectiveService.filter(deviceId, filter);
+        }
+
+        /**
+         * Add a ForwardingObjective bound to the meter of its rate limit profile.
+         * @param deviceId : The DeviceId of target device.
+         * @param type : Switch type of target device.
+         * @param priority : Priority of ForwardingObjective.
+         * @param selector : Match fields.
+         * @param treatment : Instructions, without meter.
+         */
+        private void addMeteredForward(DeviceId deviceId, OvsDeviceType type, int priority,
+                                       TrafficSelector selector, TrafficTreatment treatment) {
+            String profile = meterPolicies.profileOf(type, selector);
+            meteredForwards.computeIfAbsent(deviceId, k -> new ArrayList<>())
+                    .add(new MeteredForward(type, priority, selector, treatment, profile));
+            addForward(deviceId, priority, selector,
+                       withMeter(treatment, meterPolicies.meterFor(deviceId, profile)), null);
         }
 
         /**
-         * Utility method to add ForwardingObjective.
+         * Utility method to add ForwardingObjective through the send window of the device.
          * @param deviceId : The DeviceId of target device.
          * @param priority : Priority of ForwardingObjective.
          * @param selector : Match fields.
          * @param treatment : Instructions.
+         * @param onInstalled : Called once the objective is installed, may be null.
          */
-        private void addForward(DeviceId deviceId, int priority, TrafficSelector selector, TrafficTreatment treatment) {
+        private void addForward(DeviceId deviceId, int priority, TrafficSelector selector,
+                                TrafficTreatment treatment, Runnable onInstalled) {
 
             ForwardingObjective.Builder forwardingObjectiveBuilder = DefaultForwardingObjective.builder();
             forwardingObjectiveBuilder
@@ -405,7 +1261,81 @@ public class OvsManageManager implements OvsManageService {
                     .fromApp(applicationId)
                     .makePermanent();
 
-            flowObjectiveService.forward(deviceId, forwardingObjectiveBuilder.add());
+            int tableHardLimit = tableLimit(deviceId, TABLE_HARD_LIMIT_PROPERTY);
+            int tableSoftLimit = tableLimit(deviceId, TABLE_SOFT_LIMIT_PROPERTY);
+            if (tableHardLimit > 0 || tableSoftLimit > 0) {
+                int occupancy = targetTableCount(deviceId, selector);
+                if (tableHardLimit > 0 && occupancy >= tableHardLimit) {
+                    log.warn("The target table of {} is full with {} rules, the objective will likely be rejected",
+                             deviceId, occupancy);
+                } else if (tableSoftLimit > 0 && occupancy >= tableSoftLimit) {
+                    log.warn("The target table of {} is near its limit with {} rules", deviceId, occupancy);
+                }
+            }
+
+            readinessTracker.objectiveSent(deviceId);
+            forwardingObjectiveWindow.submit(deviceId, forwardingObjectiveBuilder, onInstalled);
+        }
+    }
+
+    /**
+     * Listener to the bridge registry, learns the legacy bridges registered and releases the meters
+     * of bridges deleted by any member of the cluster.
+     */
+    private class InnerRegistryListener implements MapEventListener<String, BridgeRecord> {
+        @Override
+        public void event(MapEvent<String, BridgeRecord> event) {
+            if (event.value() == null) {
+                return;
+            }
+            if (event.type() != MapEvent.Type.REMOVE) {
+                trackLegacyBridge(event.value().value());
+                return;
+            }
+            DeviceId deviceId = toDeviceId(event.value().value().datapathId());
+            legacyBridges.remove(deviceId);
+            deviceEventExecutor.execute(() -> releaseMeters(deviceId));
+        }
+    }
+
+    /**
+     * Listener to mastership changes, the new master of a switch already up provisions it.
+     */
+    private class InnerMastershipListener implements MastershipListener {
+        @Override
+        public void event(MastershipEvent event) {
+            if (event.type() != MastershipEvent.Type.MASTER_CHANGED
+                    || !mastershipService.isLocalMaster(event.subject())) {
+                return;
+            }
+            DeviceId deviceId = event.subject();
+            // a switch still inside its quiet period is provisioned when it settles
+            deviceEventExecutor.execute(() -> {
+                if (deviceEventCoalescer.isStableUp(deviceId)) {
+                    innerDeviceListener.dealSwitch(deviceId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Listener to FlowRule Event, counts the rules per table and catches the table miss rules of OVSPipeline.
+     */
+    private class InnerFlowRuleListener implements FlowRuleListener {
+        @Override
+        public void event(FlowRuleEvent event) {
+            tableOccupancy.update(event);
+            if (event.type() != FlowRuleEvent.Type.RULE_ADDED) {
+                return;
+            }
+            DeviceId deviceId = event.subject().deviceId();
+            if (readinessTracker.readyFuture(deviceId) == null) {
+                return;
+            }
+            ApplicationId appId = coreService.getAppId(event.subject().appId());
+            if (appId != null && PIPELINE_APP_NAME.equals(appId.name())) {
+                readinessTracker.reached(deviceId, BridgeStage.PIPELINE_INITIALIZED);
+            }
         }
     }
 }
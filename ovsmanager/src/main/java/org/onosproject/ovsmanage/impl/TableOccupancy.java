@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flow.FlowEntry;
+import org.onosproject.net.flow.FlowId;
+import org.onosproject.net.flow.FlowRule;
+import org.onosproject.net.flow.FlowRuleEvent;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rules per table of every device, updated from FlowRule events.
+ * Rules are kept by FlowId, so a rule modified in place or reported twice is counted once.
+ */
+final class TableOccupancy {
+
+    private final Map<DeviceId, Map<Integer, Set<FlowId>>> devices = new ConcurrentHashMap<>();
+
+    /**
+     * Count the rules already on a device.
+     * @param deviceId : The DeviceId of the device.
+     * @param entries : Flow entries of the device.
+     */
+    void seed(DeviceId deviceId, Iterable<FlowEntry> entries) {
+        for (FlowEntry entry : entries) {
+            if (entry.state() == FlowEntry.FlowEntryState.ADDED) {
+                rules(entry).add(entry.id());
+            }
+        }
+    }
+
+    /**
+     * Apply a FlowRule event.
+     * @param event : the event.
+     */
+    void update(FlowRuleEvent event) {
+        switch (event.type()) {
+            case RULE_ADDED:
+                rules(event.subject()).add(event.subject().id());
+                break;
+            case RULE_REMOVED:
+                rules(event.subject()).remove(event.subject().id());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Forget a device, its rules are purged with it.
+     * @param deviceId : The DeviceId of the device.
+     */
+    void clear(DeviceId deviceId) {
+        devices.remove(deviceId);
+    }
+
+    /**
+     * Get the rule count of every table of a device.
+     * @param deviceId : The DeviceId of the device.
+     * @return : rule count per table ID, in table order.
+     */
+    Map<Integer, Integer> counts(DeviceId deviceId) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        devices.getOrDefault(deviceId, Collections.emptyMap())
+                .forEach((table, rules) -> counts.put(table, rules.size()));
+        return counts;
+    }
+
+    private Set<FlowId> rules(FlowRule rule) {
+        return devices.computeIfAbsent(rule.deviceId(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(rule.tableId(), k -> ConcurrentHashMap.newKeySet());
+    }
+}
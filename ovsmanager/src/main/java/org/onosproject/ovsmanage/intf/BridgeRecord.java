@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.intf;
+
+import java.util.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Entry of the replicated bridge registry.
+ */
+public final class BridgeRecord {
+
+    private final String name;
+    private final OvsManageService.OvsDeviceType type;
+    private final long datapathId;
+    private final String ovsdbNode;
+
+    /**
+     * Constructor.
+     * @param name : Bridge name.
+     * @param type : Switch type, null if the bridge was not created by OVS Manager.
+     * @param datapathId : Datapath ID of the bridge.
+     * @param ovsdbNode : DeviceId of the OVSDB connection holding the bridge, null if unknown.
+     */
+    public BridgeRecord(String name, OvsManageService.OvsDeviceType type, long datapathId, String ovsdbNode) {
+        this.name = name;
+        this.type = type;
+        this.datapathId = datapathId;
+        this.ovsdbNode = ovsdbNode;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public OvsManageService.OvsDeviceType type() {
+        return type;
+    }
+
+    public long datapathId() {
+        return datapathId;
+    }
+
+    public String ovsdbNode() {
+        return ovsdbNode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BridgeRecord)) {
+            return false;
+        }
+        BridgeRecord that = (BridgeRecord) obj;
+        return datapathId == that.datapathId
+                && Objects.equals(name, that.name)
+                && type == that.type
+                && Objects.equals(ovsdbNode, that.ovsdbNode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type, datapathId, ovsdbNode);
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("name", name)
+                .add("type", type)
+                .add("datapathId", String.format("%016x", datapathId))
+                .add("ovsdbNode", ovsdbNode)
+                .toString();
+    }
+}
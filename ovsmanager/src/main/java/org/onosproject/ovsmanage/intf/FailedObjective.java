@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.intf;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.flowobjective.ForwardingObjective;
+import org.onosproject.net.flowobjective.ObjectiveError;
+
+/**
+ * A ForwardingObjective which still failed after all retries.
+ */
+public final class FailedObjective {
+
+    private final DeviceId deviceId;
+    private final ForwardingObjective objective;
+    private final ObjectiveError error;
+    private final int attempts;
+    private final long timestamp;
+
+    /**
+     * Constructor.
+     * @param deviceId : The DeviceId of target device.
+     * @param objective : The last attempt of the objective.
+     * @param error : The error of the last attempt.
+     * @param attempts : Number of attempts.
+     * @param timestamp : Time of the last failure, in milliseconds.
+     */
+    public FailedObjective(DeviceId deviceId, ForwardingObjective objective,
+                           ObjectiveError error, int attempts, long timestamp) {
+        this.deviceId = deviceId;
+        this.objective = objective;
+        this.error = error;
+        this.attempts = attempts;
+        this.timestamp = timestamp;
+    }
+
+    public DeviceId deviceId() {
+        return deviceId;
+    }
+
+    public ForwardingObjective objective() {
+        return objective;
+    }
+
+    public ObjectiveError error() {
+        return error;
+    }
+
+    public int attempts() {
+        return attempts;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+}
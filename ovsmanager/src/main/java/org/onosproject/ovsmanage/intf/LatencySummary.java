@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.intf;
+
+/**
+ * Percentile summary of a latency distribution, in milliseconds.
+ */
+public final class LatencySummary {
+
+    private final long count;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long max;
+
+    /**
+     * Constructor.
+     * @param count : Number of samples.
+     * @param p50 : Median.
+     * @param p90 : 90th percentile.
+     * @param p99 : 99th percentile.
+     * @param max : Largest sample.
+     */
+    public LatencySummary(long count, long p50, long p90, long p99, long max) {
+        this.count = count;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long p50() {
+        return p50;
+    }
+
+    public long p90() {
+        return p90;
+    }
+
+    public long p99() {
+        return p99;
+    }
+
+    public long max() {
+        return max;
+    }
+}
@@ -17,7 +17,10 @@ package org.onosproject.ovsmanage.intf;
 
 import org.onosproject.net.behaviour.BridgeDescription;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * OVS Switch Manage Service.
@@ -46,6 +49,107 @@ public interface OvsManageService {
      */
     List<BridgeDescription> getOvs(OvsDeviceType type);
 
+    /**
+     * Get the names of the bridges in the registry, created by any member of the cluster.
+     * @return : Set of the bridge names, empty if the registry is not ready.
+     */
+    Set<String> getBridgeNames();
+
+    /**
+     * Get the readiness state of the manager.
+     * @return : current state, bridges can be created or deleted only when READY.
+     */
+    ManagerState getState();
+
+    /**
+     * Get the number of bridge device events folded away before provisioning.
+     * @return : count of device events which did not trigger provisioning.
+     */
+    long getSuppressedEventCount();
+
+    /**
+     * Get the number of bridge name existence checks.
+     * @return : count of existence checks.
+     */
+    long getNameLookupCount();
+
+    /**
+     * Get the number of bridge name existence checks answered without the distributed registry.
+     * @return : count of existence checks answered locally.
+     */
+    long getLocalNameLookupCount();
+
+    /**
+     * Get the ForwardingObjectives which still failed after all retries.
+     * @return : List of the failed objectives, oldest first.
+     */
+    List<FailedObjective> getFailedObjectives();
+
+    /**
+     * Forget all failed ForwardingObjectives.
+     */
+    void clearFailedObjectives();
+
+    /**
+     * Get the time bridges took from creation request to every provisioning stage.
+     * @return : Latency summaries per stage and Switch type.
+     */
+    Map<BridgeStage, Map<OvsDeviceType, LatencySummary>> getReadinessLatencies();
+
+    /**
+     * Wait until a bridge created by createOvs is connected and its ForwardingObjectives are confirmed.
+     * @param deviceName : Switch name.
+     * @param timeoutMillis : Maximum time to wait, in milliseconds.
+     * @return : if the bridge is ready.
+     */
+    boolean waitUntilReady(String deviceName, long timeoutMillis);
+
+    /**
+     * Get the mask shapes of the rules installed on a bridge, per table.
+     * @param deviceName : Switch name.
+     * @return : rule count per mask shape, per table ID. Empty if the bridge does not exist.
+     */
+    Map<Integer, Map<String, Integer>> getTableMaskShapes(String deviceName);
+
+    /**
+     * Get the number of rules in each table of the bridges in the registry.
+     * @return : rule count per table ID, per bridge name.
+     */
+    Map<String, Map<Integer, Integer>> getTableOccupancy();
+
+    /**
+     * Get the rule count from which a table of a bridge is near its limit, as set in its pipeline driver.
+     * @param deviceName : Switch name.
+     * @return : soft limit, 0 if disabled or the bridge does not exist.
+     */
+    int getTableSoftLimit(String deviceName);
+
+    /**
+     * Get the rule count from which a table of a bridge is full, as set in its pipeline driver.
+     * @param deviceName : Switch name.
+     * @return : hard limit, 0 if disabled or the bridge does not exist.
+     */
+    int getTableHardLimit(String deviceName);
+
+    /**
+     * Write the bridge registry (name, type, datapath ID, OVSDB node) to a snapshot file.
+     * @param file : Path of the snapshot file, replaced atomically.
+     * @return : number of bridges exported.
+     * @throws IOException : if the file can not be written.
+     */
+    int exportBridges(String file) throws IOException;
+
+    /**
+     * Re-create the bridges of a snapshot file with their original datapath IDs.
+     * Restored bridges are appended to a checkpoint file next to the snapshot,
+     * an interrupted restore skips them when run again.
+     * @param file : Path of the snapshot file.
+     * @param parallelism : Number of bridges created concurrently.
+     * @return : number of bridges restored by this run.
+     * @throws IOException : if the snapshot can not be read.
+     */
+    int restoreBridges(String file, int parallelism) throws IOException;
+
     /**
      * Switch type, include CORE and ACCESS.
      */
@@ -54,4 +158,25 @@ public interface OvsManageService {
         ACCESS
     }
 
+    /**
+     * Provisioning stages of a bridge, in order.
+     */
+    enum BridgeStage {
+        REQUESTED,
+        OVSDB_ACKNOWLEDGED,
+        OPENFLOW_CONNECTED,
+        PIPELINE_INITIALIZED,
+        OBJECTIVES_CONFIRMED
+    }
+
+    /**
+     * Readiness state, advanced by the background inventory tasks started at activation.
+     */
+    enum ManagerState {
+        INITIALIZING,
+        WAITING_FOR_CONTROLLER,
+        RECONCILING,
+        READY
+    }
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+import org.onosproject.ovsmanage.intf.OvsManageService.OvsDeviceType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the bridge inventory snapshot file.
+ */
+public class BridgeInventoryFileTest {
+
+    private static final List<BridgeRecord> RECORDS = Arrays.asList(
+            new BridgeRecord("br-core-1", OvsDeviceType.CORE,
+                             DatapathIdCodec.encode(OvsDeviceType.CORE, 1), "ovsdb:10.0.0.1"),
+            new BridgeRecord("br-access-2", OvsDeviceType.ACCESS,
+                             DatapathIdCodec.encode(OvsDeviceType.ACCESS, 2), null),
+            new BridgeRecord("br-int", null, 0x00000000000000abL, "ovsdb:10.0.0.2"));
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ovs-inventory");
+        file = directory.resolve("inventory.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        assertEquals(RECORDS.size(), BridgeInventoryFile.write(file, RECORDS));
+
+        List<BridgeRecord> read = new ArrayList<>();
+        assertEquals(RECORDS.size(), BridgeInventoryFile.read(file, read::add));
+        assertEquals(RECORDS, read);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedSnapshot() throws IOException {
+        BridgeInventoryFile.write(file, RECORDS);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+
+        BridgeInventoryFile.read(file, record -> { });
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.junit.Test;
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+import org.onosproject.store.service.MapEvent;
+import org.onosproject.store.service.Versioned;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the negative-lookup filter of bridge names.
+ */
+public class BridgeNameNearCacheTest {
+
+    private static final int SIZE = 4096;
+
+    private final BridgeNameNearCache cache = new BridgeNameNearCache(SIZE);
+
+    private static MapEvent<String, BridgeRecord> event(MapEvent.Type type, String name) {
+        return new MapEvent<>("ovs-bridges", type, name,
+                              new Versioned<>(new BridgeRecord(name, null, 0, null), 1));
+    }
+
+    @Test
+    public void followsRegistryEvents() {
+        assertFalse(cache.mightContain("br-1"));
+        cache.event(event(MapEvent.Type.INSERT, "br-1"));
+        assertTrue(cache.mightContain("br-1"));
+        cache.event(event(MapEvent.Type.REMOVE, "br-1"));
+        assertFalse(cache.mightContain("br-1"));
+        assertEquals(3, cache.lookups());
+        assertEquals(2, cache.localAnswers());
+    }
+
+    @Test
+    public void localInsertCountedOnce() {
+        cache.localInsert("br-1");
+        assertTrue(cache.mightContain("br-1"));
+        cache.event(event(MapEvent.Type.INSERT, "br-1"));
+        cache.event(event(MapEvent.Type.REMOVE, "br-1"));
+        assertFalse(cache.mightContain("br-1"));
+    }
+
+    @Test
+    public void abortedLocalInsert() {
+        cache.localInsert("br-1");
+        cache.abortLocalInsert("br-1");
+        assertFalse(cache.mightContain("br-1"));
+    }
+
+    @Test
+    public void rebuildLoadsNames() {
+        cache.rebuild(() -> Arrays.asList("br-1", "br-2"), SIZE);
+        assertTrue(cache.mightContain("br-1"));
+        assertTrue(cache.mightContain("br-2"));
+        assertFalse(cache.mightContain("br-3"));
+    }
+
+    @Test
+    public void rebuildKeepsEventsReceivedWhileReading() {
+        cache.event(event(MapEvent.Type.INSERT, "br-old"));
+        cache.rebuild(() -> {
+            Set<String> names = new HashSet<>(Collections.singleton("br-old"));
+            // the registry changes after the names were read, before the rebuild completes
+            cache.event(event(MapEvent.Type.INSERT, "br-new"));
+            cache.event(event(MapEvent.Type.REMOVE, "br-old"));
+            assertTrue(cache.mightContain("br-new"));
+            return names;
+        }, SIZE);
+        assertTrue(cache.mightContain("br-new"));
+        assertFalse(cache.mightContain("br-old"));
+    }
+
+    @Test
+    public void rebuildKeepsPendingLocalInserts() {
+        cache.localInsert("br-1");
+        cache.rebuild(Collections::emptySet, SIZE);
+        assertTrue(cache.mightContain("br-1"));
+        cache.event(event(MapEvent.Type.INSERT, "br-1"));
+        cache.event(event(MapEvent.Type.REMOVE, "br-1"));
+        assertFalse(cache.mightContain("br-1"));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.onlab.util.KryoNamespace;
+import org.onosproject.ovsmanage.intf.BridgeRecord;
+import org.onosproject.ovsmanage.intf.OvsManageService.OvsDeviceType;
+import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.Serializer;
+
+import java.util.function.IntFunction;
+
+/**
+ * Compares size and speed of the bridge registry serializers.
+ * Not run by the build, start main() from the IDE or with the test classpath.
+ */
+public final class BridgeRecordSerializerBenchmark {
+
+    private static final String RESULT_FORMAT = "%-32s %8.1f bytes %10.1f ns encode %10.1f ns decode%n";
+    private static final int RECORD_COUNT = 1024;
+
+    // read after every run so that the JIT can not drop the measured work
+    private static volatile long blackhole;
+
+    private BridgeRecordSerializerBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args : number of encode/decode rounds over 1024 records, 200 by default.
+     */
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        BridgeRecord[] records = new BridgeRecord[RECORD_COUNT];
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            OvsDeviceType type = i % 2 == 0 ? OvsDeviceType.CORE : OvsDeviceType.ACCESS;
+            records[i] = new BridgeRecord("br-bench-" + i, type, DatapathIdCodec.encode(type, i + 1),
+                                          "ovsdb:192.168.0.1");
+        }
+
+        Serializer legacy = Serializer.using(new KryoNamespace.Builder()
+                                                     .register(KryoNamespaces.API)
+                                                     .register(String.class)
+                                                     .build());
+        Serializer generic = Serializer.using(new KryoNamespace.Builder()
+                                                      .register(KryoNamespaces.API)
+                                                      .register(OvsDeviceType.class)
+                                                      .register(BridgeRecord.class)
+                                                      .build());
+        Serializer compact = Serializer.using(BridgeRecordSerializer.namespace());
+
+        run("KryoNamespaces.API, name only", legacy, i -> records[i].name(), iterations);
+        run("KryoNamespaces.API, record", generic, i -> records[i], iterations);
+        run("BridgeRecordSerializer, record", compact, i -> records[i], iterations);
+    }
+
+    private static void run(String label, Serializer serializer, IntFunction<Object> source, int iterations) {
+        byte[][] encoded = new byte[RECORD_COUNT][];
+        long bytes = 0;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            encoded[i] = serializer.encode(source.apply(i));
+            bytes += encoded[i].length;
+        }
+        // warm up
+        measure(serializer, source, encoded, Math.max(1, iterations / 10));
+
+        long[] nanos = measure(serializer, source, encoded, iterations);
+        double operations = (double) iterations * RECORD_COUNT;
+        System.out.printf(RESULT_FORMAT, label, (double) bytes / RECORD_COUNT,
+                          nanos[0] / operations, nanos[1] / operations);
+    }
+
+    private static long[] measure(Serializer serializer, IntFunction<Object> source, byte[][] encoded, int rounds) {
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        long sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                sink += serializer.encode(source.apply(i)).length;
+            }
+            long middle = System.nanoTime();
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                sink += serializer.decode(encoded[i]).hashCode();
+            }
+            encodeNanos += middle - start;
+            decodeNanos += System.nanoTime() - middle;
+        }
+        blackhole = sink;
+        return new long[]{encodeNanos, decodeNanos};
+    }
+}
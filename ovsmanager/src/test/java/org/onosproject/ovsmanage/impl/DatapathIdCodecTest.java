@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+import org.onosproject.ovsmanage.intf.OvsManageService.OvsDeviceType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the datapath ID layout.
+ */
+public class DatapathIdCodecTest {
+
+    private static DeviceId of(String digits) {
+        return DeviceId.deviceId("of:" + digits);
+    }
+
+    @Test
+    public void roundTrip() {
+        for (OvsDeviceType type : OvsDeviceType.values()) {
+            for (long sequence : new long[]{1, 42, 0xFFFFFFFFFFFFL}) {
+                long datapathId = DatapathIdCodec.encode(type, sequence);
+                long parsed = DatapathIdCodec.parse(of(DatapathIdCodec.toDatapathIdString(datapathId)));
+
+                assertEquals(datapathId, parsed);
+                assertEquals(type, DatapathIdCodec.typeOf(parsed));
+                assertEquals(sequence, DatapathIdCodec.sequenceOf(parsed));
+            }
+        }
+    }
+
+    @Test
+    public void layout() {
+        assertEquals("0001000000000007", DatapathIdCodec.toDatapathIdString(
+                DatapathIdCodec.encode(OvsDeviceType.CORE, 7)));
+        assertEquals("0002000000000007", DatapathIdCodec.toDatapathIdString(
+                DatapathIdCodec.encode(OvsDeviceType.ACCESS, 7)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sequenceOutOfRange() {
+        DatapathIdCodec.encode(OvsDeviceType.CORE, 1L << 48);
+    }
+
+    @Test
+    public void legacyLayout() {
+        long core = DatapathIdCodec.parse(of("0000000100000003"));
+        assertEquals(OvsDeviceType.CORE, DatapathIdCodec.legacyTypeOf(core));
+        assertNull(DatapathIdCodec.typeOf(core));
+        assertEquals(-1, DatapathIdCodec.sequenceOf(core));
+
+        long access = DatapathIdCodec.parse(of("0000000000000012"));
+        assertEquals(OvsDeviceType.ACCESS, DatapathIdCodec.legacyTypeOf(access));
+        assertNull(DatapathIdCodec.typeOf(access));
+
+        assertNull(DatapathIdCodec.legacyTypeOf(DatapathIdCodec.encode(OvsDeviceType.CORE, 3)));
+        assertNull(DatapathIdCodec.legacyTypeOf(DatapathIdCodec.parse(of("00000000000000ab"))));
+    }
+
+    @Test
+    public void foreignSwitches() {
+        // all decimal, e.g. a Mininet switch, is only legacy if registered as such
+        assertNull(DatapathIdCodec.typeOf(DatapathIdCodec.parse(of("0000000000000001"))));
+        // hex digits in the legacy layout
+        assertNull(DatapathIdCodec.typeOf(DatapathIdCodec.parse(of("00000000000000ab"))));
+        // unknown type code
+        assertNull(DatapathIdCodec.typeOf(DatapathIdCodec.parse(of("0005000000000001"))));
+        // reserved bits set
+        assertNull(DatapathIdCodec.typeOf(DatapathIdCodec.parse(of("0101000000000001"))));
+        assertEquals(-1, DatapathIdCodec.sequenceOf(DatapathIdCodec.parse(of("0101000000000001"))));
+    }
+
+    @Test
+    public void invalidDeviceIds() {
+        assertEquals(DatapathIdCodec.INVALID, DatapathIdCodec.parse(DeviceId.deviceId("ovsdb:10.0.0.1")));
+        assertEquals(DatapathIdCodec.INVALID, DatapathIdCodec.parse(of("000100000000001")));
+        assertEquals(DatapathIdCodec.INVALID, DatapathIdCodec.parse(of("000100000000000g")));
+        assertNull(DatapathIdCodec.typeOf(DatapathIdCodec.INVALID));
+    }
+}
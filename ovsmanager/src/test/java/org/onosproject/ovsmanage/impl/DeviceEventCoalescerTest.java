@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the device event coalescing.
+ */
+public class DeviceEventCoalescerTest {
+
+    private static final long QUIET_PERIOD = 100;
+    private static final DeviceId DEVICE = DeviceId.deviceId("of:0002000000000001");
+
+    private ScheduledExecutorService executor;
+    private final List<DeviceId> provisioned = new CopyOnWriteArrayList<>();
+    private final List<DeviceId> released = new CopyOnWriteArrayList<>();
+    private DeviceEventCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        coalescer = new DeviceEventCoalescer(executor, QUIET_PERIOD, provisioned::add, released::add);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Wait until the events submitted so far have settled.
+     */
+    private void settle() throws Exception {
+        Thread.sleep(QUIET_PERIOD * 3);
+        executor.submit(() -> { }).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void provisionsOnceUp() throws Exception {
+        coalescer.submit(DEVICE, true);
+        settle();
+        assertEquals(1, provisioned.size());
+        assertEquals(1, coalescer.transitionCount());
+    }
+
+    @Test
+    public void foldsFlapping() throws Exception {
+        coalescer.submit(DEVICE, true);
+        coalescer.submit(DEVICE, false);
+        coalescer.submit(DEVICE, true);
+        settle();
+        assertEquals(1, provisioned.size());
+        assertEquals(2, coalescer.suppressedCount());
+    }
+
+    @Test
+    public void downThenUpWithinQuietPeriodIsSuppressed() throws Exception {
+        coalescer.submit(DEVICE, true);
+        settle();
+        coalescer.submit(DEVICE, false);
+        coalescer.submit(DEVICE, true);
+        settle();
+        assertEquals(1, provisioned.size());
+        assertEquals(0, released.size());
+        assertEquals(1, coalescer.transitionCount());
+    }
+
+    @Test
+    public void provisionsAgainAfterStableDown() throws Exception {
+        coalescer.submit(DEVICE, true);
+        settle();
+        coalescer.submit(DEVICE, false);
+        settle();
+        coalescer.submit(DEVICE, true);
+        settle();
+        assertEquals(2, provisioned.size());
+        assertEquals(1, released.size());
+        assertEquals(3, coalescer.transitionCount());
+    }
+}
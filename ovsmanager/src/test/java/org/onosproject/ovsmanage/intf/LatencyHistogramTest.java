@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onosproject.ovsmanage.intf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the log-linear latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        LatencySummary summary = new LatencyHistogram().summary();
+        assertEquals(0, summary.count());
+        assertEquals(0, summary.p50());
+        assertEquals(0, summary.max());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 4; value++) {
+            histogram.record(value);
+        }
+        assertEquals(4, histogram.count());
+        assertEquals(2, histogram.percentile(50));
+        assertEquals(4, histogram.percentile(100));
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        assertWithin(5000, histogram.percentile(50));
+        assertWithin(9000, histogram.percentile(90));
+        assertWithin(9900, histogram.percentile(99));
+        assertEquals(10000, histogram.summary().max());
+    }
+
+    @Test
+    public void negativeCountsAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.percentile(100));
+    }
+
+    @Test
+    public void largestValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(50));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + ", got " + actual,
+                   actual >= expected && actual <= expected + expected / 8);
+    }
+}